@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.NLP;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a Summary, shared by the webapp and the Glass client.
+ * Unlike Java serialization it carries no class descriptors, and it is not Base64-wrapped.
+ * <pre>
+ * byte    magic 'K'
+ * byte    version, currently 1
+ * byte    flags; bit 0 set if there is a title
+ * string  title, if present
+ * varint  number of authors, then each author as a string
+ * varint  1 + index of the review marker in the text, or 0 if there are no reviews
+ * varint  number of sentences, excluding the review marker, then each sentence as a string
+ * </pre>
+ * A string is a varint byte count followed by that many bytes of UTF-8; a varint is an unsigned
+ * LEB128 integer (7 bits per byte, least significant first). The helpers writing and reading them are public
+ * so that other framings, such as SummaryBatch, share them.
+ * Decoders reject versions they do not know, so the version must change whenever the layout does.
+ * This file is kept identical in the webapp and in CultureGlass.
+ *
+ * @author groupKilo
+ */
+public final class SummaryCodec {
+
+    public static final String MEDIA_TYPE = "application/octet-stream";
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 'K';
+    private static final int HAS_TITLE = 1;
+    private static final String REVIEW_MARKER = "BEGIN_REVIEWS";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SummaryCodec() {
+    }
+
+    /**
+     * @param summary The Summary to encode
+     * @return Its binary encoding
+     */
+    public static byte[] encode(Summary summary) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(summary.getTitle() != null ? HAS_TITLE : 0);
+        if (summary.getTitle() != null)
+            writeString(out, summary.getTitle());
+
+        List<String> authors = summary.getAuthors();
+        writeVarint(out, authors.size());
+        for (String author : authors)
+            writeString(out, author);
+
+        List<String> text = summary.getText();
+        int marker = text.indexOf(REVIEW_MARKER);
+        writeVarint(out, marker + 1);
+        writeVarint(out, marker < 0 ? text.size() : text.size() - 1);
+        for (int i = 0; i < text.size(); i++) {
+            if (i != marker)
+                writeString(out, text.get(i));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data A binary encoding produced by encode
+     * @return The decoded Summary
+     * @throws IOException If the data is truncated, malformed or of an unknown version
+     */
+    public static Summary decode(byte[] data) throws IOException {
+        Reader in = new Reader(data, "Summary");
+        if (in.readByte() != MAGIC)
+            throw new IOException("Not an encoded Summary");
+        int version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported Summary encoding version " + version);
+        int flags = in.readByte();
+        String title = (flags & HAS_TITLE) != 0 ? in.readString() : null;
+
+        int authorCount = in.readCount();
+        List<String> authors = new ArrayList<String>(authorCount);
+        for (int i = 0; i < authorCount; i++)
+            authors.add(in.readString());
+
+        int marker = in.readVarint() - 1;
+        int sentenceCount = in.readCount();
+        if (marker > sentenceCount)
+            throw new IOException("Review marker out of range");
+        List<String> text = new ArrayList<String>(sentenceCount + 1);
+        for (int i = 0; i < sentenceCount; i++) {
+            if (i == marker) text.add(REVIEW_MARKER);
+            text.add(in.readString());
+        }
+        if (marker == sentenceCount) text.add(REVIEW_MARKER);
+
+        if (in.remaining() != 0)
+            throw new IOException("Trailing bytes after Summary");
+        return new Summary(title, authors, text);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        writeBytes(out, s.getBytes(UTF8));
+    }
+
+    /**
+     * @param out The stream to write to
+     * @param bytes Written as a varint byte count followed by the bytes
+     */
+    public static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param out The stream to write to
+     * @param value Written as an unsigned LEB128 varint
+     */
+    public static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Bounds-checked cursor over encoded bytes
+     */
+    public static final class Reader {
+        private final byte[] data;
+        private final String what;
+        private int position;
+
+        /**
+         * @param data The encoded bytes
+         * @param what Names the encoding in errors, e.g. "Summary"
+         */
+        public Reader(byte[] data, String what) {
+            this.data = data;
+            this.what = what;
+        }
+
+        public int remaining() {
+            return data.length - position;
+        }
+
+        public int readByte() throws IOException {
+            if (position >= data.length)
+                throw new IOException("Truncated " + what);
+            return data[position++] & 0xff;
+        }
+
+        public int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * A count of items that each take at least one byte, so it cannot exceed what is left
+         */
+        public int readCount() throws IOException {
+            int count = readVarint();
+            if (count < 0 || count > remaining())
+                throw new IOException("Bad count " + count);
+            return count;
+        }
+
+        public String readString() throws IOException {
+            int length = readCount();
+            String s = new String(data, position, length, UTF8);
+            position += length;
+            return s;
+        }
+
+        public byte[] readBytes() throws IOException {
+            int length = readCount();
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.NLP;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with a preset dictionary of text common to summaries, for SummaryCodec payloads.
+ * A summary is a few hundred bytes of English, too short for plain deflate or gzip to find much to refer
+ * back to; with the dictionary primed it can refer to phrases and words in the dictionary instead.
+ * The dictionary is a resource named after its version, shipped with both the webapp and the Glass client,
+ * and the version is part of the HTTP content coding so that a client only receives what it can inflate.
+ * The zlib stream records the dictionary's Adler-32, so inflating with the wrong dictionary fails instead
+ * of producing garbage.
+ * This file is kept identical in the webapp and in CultureGlass.
+ *
+ * @author groupKilo
+ */
+public final class SummaryDictionary {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Content coding for Accept-Encoding and Content-Encoding
+     */
+    public static final String ENCODING = "x-kilo-deflate-" + VERSION;
+
+    /**
+     * Largest payload inflated, so that a corrupt or hostile stream cannot exhaust memory
+     */
+    public static final int MAX_INFLATED_SIZE = 4 * 1024 * 1024;
+
+    private static final String RESOURCE = "/kilo-summary-" + VERSION + ".dict";
+
+    private static volatile byte[] dictionary;
+
+    private SummaryDictionary() {
+    }
+
+    /**
+     * @return The preset dictionary, loaded on first use; shared, do not modify
+     */
+    public static byte[] get() {
+        byte[] d = dictionary;
+        if (d == null) {
+            try {
+                d = load();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read " + RESOURCE, e);
+            }
+            dictionary = d;
+        }
+        return d;
+    }
+
+    private static byte[] load() throws IOException {
+        InputStream in = SummaryDictionary.class.getResourceAsStream(RESOURCE);
+        if (in == null)
+            throw new IOException(RESOURCE + " not found");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param data Bytes to compress, usually a SummaryCodec encoding
+     * @return A zlib stream primed with the dictionary
+     */
+    public static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(get());
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param data A stream produced by compress
+     * @return The original bytes
+     * @throws IOException If the stream is corrupt, was compressed with another dictionary or inflates
+     *                     beyond MAX_INFLATED_SIZE
+     */
+    public static byte[] decompress(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary())
+                        inflater.setDictionary(get());
+                    else if (inflater.needsInput())
+                        throw new IOException("Truncated compressed summary");
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_INFLATED_SIZE)
+                    throw new IOException("Compressed summary inflates beyond " + MAX_INFLATED_SIZE + " bytes");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed summary", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Summary was compressed with a different dictionary", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
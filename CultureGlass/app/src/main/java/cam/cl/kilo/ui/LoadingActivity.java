@@ -21,30 +21,39 @@ import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Base64;
+import android.util.LruCache;
 import android.view.View;
 
 import com.github.barcodeeye.migrated.HttpHelper;
 import com.google.android.glass.widget.CardBuilder;
 import com.google.android.glass.widget.Slider;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 
 import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
 
 /**
- * Displays a loading screen while performing the call to our webapp
+ * Displays a loading screen while performing the call to our webapp.
+ * New scans are streamed, so the title card replaces the loading screen after one provider round trip and
+ * the first description sentence follows once it is summarized; rescans of recent items are revalidated instead.
  *
  * @author groupKilo
  * @author rh572
  */
 public class LoadingActivity extends Activity {
 
+    /**
+     * Summaries of recent scans with their entity tags, so that a rescan only downloads and
+     * decodes the summary again if the webapp's copy has changed
+     */
+    private static final LruCache<String, CachedSummary> RECENT = new LruCache<String, CachedSummary>(32);
+
     private View mLoading;
     private Slider.Indeterminate mIndeterminate;
     private Slider mSlider;
     private String URI = "http://groupkilo.soc.srcf.net/ProjectKiloWebApp/barcode?barcodeNo={CODE}&barcodeType={TYPE}";
+    private String STREAM_URI = "http://groupkilo.soc.srcf.net/ProjectKiloWebApp/barcode/stream?barcodeNo={CODE}&barcodeType={TYPE}";
     private String EXTRA_RESULT_SERIAL = "EXTRA_RESULT_SERIAL";
     private String EXTRA_CODE = "EXTRA_CODE";
     private String EXTRA_TYPE = "EXTRA_TYPE";
@@ -74,8 +83,9 @@ public class LoadingActivity extends Activity {
         }
 
         URI = URI.replace("{CODE}", code).replace("{TYPE}", type);
+        STREAM_URI = STREAM_URI.replace("{CODE}", code).replace("{TYPE}", type);
 
-        new GetItemInfo().execute(URI);
+        new GetItemInfo().execute(URI, STREAM_URI);
 
         setContentView(mLoading);
     }
@@ -96,10 +106,67 @@ public class LoadingActivity extends Activity {
 
     }
 
+    /**
+     * Replaces the loading screen with what is known of the item so far, keeping the progress bar running
+     *
+     * @param partial A Summary with the title and authors, and possibly the first description sentences
+     */
+    private void displayPartial(Summary partial) {
+        if (partial.getTitle() == null) {
+            return;
+        }
+        String author = partial.getAuthors().isEmpty() ? "" : partial.getAuthors().get(0);
+        CardBuilder card;
+        if (partial.getText().isEmpty()) {
+            card = new CardBuilder(this, CardBuilder.Layout.MENU)
+                    .setText(partial.getTitle())
+                    .setFootnote(author.isEmpty() ? "Loading..." : "by " + author);
+        } else {
+            card = new CardBuilder(this, CardBuilder.Layout.TEXT)
+                    .setText(partial.getText().get(0))
+                    .setFootnote(partial.getTitle())
+                    .setTimestamp(author);
+        }
+        View view = card.getView();
+        mIndeterminate.hide();
+        mSlider = Slider.from(view);
+        mIndeterminate = mSlider.startIndeterminate();
+        setContentView(view);
+    }
+
     /**
      * An asynchronous network background task
      */
-    private class GetItemInfo extends AsyncTask<String, Void, Boolean> {
+    private class GetItemInfo extends AsyncTask<String, Summary, Boolean> {
+
+        /**
+         * Follows the streaming lookup, publishing each partial summary as it arrives.
+         * The complete summary is kept under the plain lookup uri with the entity tag it was sent with,
+         * so that a rescan revalidates it there.
+         *
+         * @param uri the streaming lookup uri of our webapp
+         * @param lookupUri the plain lookup uri of the same item
+         * @throws IOException if the stream fails before the complete summary arrives
+         */
+        private void streamInfo(String uri, final String lookupUri) throws IOException {
+            HttpHelper.downloadEvents(uri, new HttpHelper.EventHandler() {
+                @Override
+                public void onEvent(String event, String id, String data) throws IOException {
+                    Summary received = SummaryCodec.decode(Base64.decode(data, Base64.DEFAULT));
+                    if ("summary".equals(event)) {
+                        summary = received;
+                        if (id != null) {
+                            RECENT.put(lookupUri, new CachedSummary(id, received));
+                        }
+                    } else {
+                        publishProgress(received);
+                    }
+                }
+            });
+            if (summary == null) {
+                throw new IOException("Stream ended without a summary");
+            }
+        }
 
         /**
          * Performs the network lookup
@@ -108,37 +175,38 @@ public class LoadingActivity extends Activity {
          */
         private void getInfo(String uri) {
 
+            CachedSummary cached = RECENT.get(uri);
             try {
-                CharSequence result = HttpHelper.downloadViaHttp(uri, HttpHelper.ContentType.HTML);
-                summary = (Summary) fromString(result.toString());
+                HttpHelper.Download result = HttpHelper.downloadViaHttp(uri, HttpHelper.ContentType.BINARY,
+                        cached == null ? null : cached.etag);
+                if (result.isNotModified()) {
+                    summary = cached.summary;
+                } else {
+                    summary = SummaryCodec.decode(result.getBytes());
+                    if (result.getEtag() != null) {
+                        RECENT.put(uri, new CachedSummary(result.getEtag(), summary));
+                    }
+                }
             } catch (IOException ioe) {
                 ioe.printStackTrace();
-            } catch (ClassNotFoundException cnfe) {
-                cnfe.printStackTrace();
             }
 
         }
 
-        /**
-         * Decode the Base64 encoded serialised summary object
-         *
-         * @param s the Base64 encoded summary object
-         * @return The Summary object
-         * @throws IOException
-         * @throws ClassNotFoundException
-         */
-        private Object fromString(String s) throws IOException, ClassNotFoundException {
-            byte[] data = Base64.decode(s, Base64.DEFAULT);
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
-            Object o = ois.readObject();
-            ois.close();
-            return o;
-        }
-
         @Override
         protected Boolean doInBackground(String... urls) {
 
-            getInfo(urls[0]);
+            if (RECENT.get(urls[0]) != null) {
+                getInfo(urls[0]);
+            } else {
+                try {
+                    streamInfo(urls[1], urls[0]);
+                } catch (IOException ioe) {
+                    // e.g. an older webapp without the stream; fall back to one request
+                    ioe.printStackTrace();
+                    getInfo(urls[0]);
+                }
+            }
             if (summary != null && summary.getText() != null && !summary.getText().isEmpty()) {
                 return true;
             } else {
@@ -147,6 +215,11 @@ public class LoadingActivity extends Activity {
 
         }
 
+        @Override
+        protected void onProgressUpdate(Summary... partials) {
+            displayPartial(partials[partials.length - 1]);
+        }
+
         /**
          * Displays the results of the AsyncTask and stops the loading slider
          *
@@ -159,6 +232,20 @@ public class LoadingActivity extends Activity {
         }
     }
 
+    /**
+     * A decoded summary and the entity tag it was served with
+     */
+    private static class CachedSummary {
+
+        private final String etag;
+        private final Summary summary;
+
+        private CachedSummary(String etag, Summary summary) {
+            this.etag = etag;
+            this.summary = summary;
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -18,7 +18,12 @@ package com.github.barcodeeye.migrated;
 
 import android.util.Log;
 
+import cam.cl.kilo.NLP.SummaryDictionary;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.HttpURLConnection;
@@ -63,6 +68,121 @@ public final class HttpHelper {
          * Plain text content
          */
         TEXT,
+        /**
+         * Binary content, returned as bytes; sent compressed with {@link SummaryDictionary} if the
+         * server supports it
+         */
+        BINARY,
+    }
+
+    /**
+     * Result of a conditional download: either fresh content with its entity tag, or word that
+     * the copy the caller already holds is still current.
+     */
+    public static final class Download {
+
+        private final CharSequence content;
+        private final byte[] bytes;
+        private final String etag;
+
+        private Download(CharSequence content, byte[] bytes, String etag) {
+            this.content = content;
+            this.bytes = bytes;
+            this.etag = etag;
+        }
+
+        /**
+         * @return the downloaded text, or {@code null} if the server answered 304 Not Modified
+         *         or the content type is {@link ContentType#BINARY}
+         */
+        public CharSequence getContent() {
+            return content;
+        }
+
+        /**
+         * @return the downloaded bytes of {@link ContentType#BINARY} content, or {@code null}
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the entity tag of the content, or {@code null} if the server sent none
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return true if the caller's copy is still current and no content was transferred
+         */
+        public boolean isNotModified() {
+            return content == null && bytes == null;
+        }
+    }
+
+    /**
+     * Receives server-sent events as they arrive
+     */
+    public interface EventHandler {
+        /**
+         * @param event the event's name, or "message" if it has none
+         * @param id    the event's id, or null if it has none
+         * @param data  the event's data lines, joined with newlines
+         * @throws IOException to stop reading the stream
+         */
+        void onEvent(String event, String id, String data) throws IOException;
+    }
+
+    /**
+     * Reads a {@code text/event-stream} until the server closes it, handing each event to the handler
+     * as soon as the blank line ending it arrives.
+     *
+     * @param uri     URI of the stream
+     * @param handler receives the events, on the calling thread
+     * @throws IOException if the stream can't be retrieved or the handler fails
+     */
+    public static void downloadEvents(String uri, EventHandler handler) throws IOException {
+        HttpURLConnection connection = safelyOpenConnection(new URL(uri));
+        connection.setRequestProperty("Accept", "text/event-stream");
+        connection.setRequestProperty("Accept-Charset", "utf-8,*");
+        connection.setRequestProperty("User-Agent", "ZXing (Android)");
+        try {
+            int responseCode = safelyConnect(uri, connection);
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Bad HTTP response: " + responseCode);
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+            try {
+                String event = "message";
+                String id = null;
+                StringBuilder data = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.length() == 0) {
+                        if (data.length() > 0) {
+                            handler.onEvent(event, id, data.toString());
+                        }
+                        event = "message";
+                        id = null;
+                        data.setLength(0);
+                    } else if (line.startsWith("event:")) {
+                        event = line.substring("event:".length()).trim();
+                    } else if (line.startsWith("id:")) {
+                        id = line.substring("id:".length()).trim();
+                    } else if (line.startsWith("data:")) {
+                        if (data.length() > 0) {
+                            data.append('\n');
+                        }
+                        data.append(line.substring("data:".length()).trim());
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
     }
 
     /**
@@ -82,6 +202,24 @@ public final class HttpHelper {
      * @throws IOException if the content can't be retrieved because of a bad URI, network problem, etc.
      */
     public static CharSequence downloadViaHttp(String uri, ContentType type, int maxChars) throws IOException {
+        return download(uri, type, maxChars, null).getContent();
+    }
+
+    /**
+     * Downloads the entire resource unless it still has the given entity tag, in which case
+     * the server answers 304 and nothing is transferred.
+     *
+     * @param uri  URI to retrieve
+     * @param type expected MIME type of that content
+     * @param etag entity tag of the copy the caller holds, or {@code null} if it holds none
+     * @return the new content and its entity tag, or a not-modified result
+     * @throws IOException if the content can't be retrieved because of a bad URI, network problem, etc.
+     */
+    public static Download downloadViaHttp(String uri, ContentType type, String etag) throws IOException {
+        return download(uri, type, Integer.MAX_VALUE, etag);
+    }
+
+    private static String contentTypes(ContentType type) {
         String contentTypes;
         switch (type) {
             case HTML:
@@ -93,14 +231,19 @@ public final class HttpHelper {
             case XML:
                 contentTypes = "application/xml,text/*,*/*";
                 break;
+            case BINARY:
+                contentTypes = "application/octet-stream";
+                break;
             case TEXT:
             default:
                 contentTypes = "text/*,*/*";
         }
-        return downloadViaHttp(uri, contentTypes, maxChars);
+        return contentTypes;
     }
 
-    private static CharSequence downloadViaHttp(String uri, String contentTypes, int maxChars) throws IOException {
+    private static Download download(String uri, ContentType type, int maxChars, String etag)
+            throws IOException {
+        String contentTypes = contentTypes(type);
         int redirects = 0;
         while (redirects < 5) {
             URL url = new URL(uri);
@@ -109,11 +252,27 @@ public final class HttpHelper {
             connection.setRequestProperty("Accept", contentTypes);
             connection.setRequestProperty("Accept-Charset", "utf-8,*");
             connection.setRequestProperty("User-Agent", "ZXing (Android)");
+            if (type == ContentType.BINARY) {
+                // Replaces the gzip that HttpURLConnection would otherwise ask for and undo itself
+                connection.setRequestProperty("Accept-Encoding", SummaryDictionary.ENCODING + ",identity");
+            }
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
             try {
                 int responseCode = safelyConnect(uri, connection);
                 switch (responseCode) {
                     case HttpURLConnection.HTTP_OK:
-                        return consume(connection, maxChars);
+                        String newEtag = connection.getHeaderField("ETag");
+                        if (type == ContentType.BINARY) {
+                            return new Download(null, consumeBytes(connection), newEtag);
+                        }
+                        return new Download(consume(connection, maxChars), null, newEtag);
+                    case HttpURLConnection.HTTP_NOT_MODIFIED:
+                        if (etag != null) {
+                            return new Download(null, null, etag);
+                        }
+                        throw new IOException("Unexpected Not Modified");
                     case HttpURLConnection.HTTP_MOVED_TEMP:
                         String location = connection.getHeaderField("Location");
                         if (location != null) {
@@ -168,6 +327,28 @@ public final class HttpHelper {
         return out;
     }
 
+    private static byte[] consumeBytes(URLConnection connection) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = connection.getInputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) > 0) {
+                out.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // continue
+            }
+        }
+        if (SummaryDictionary.ENCODING.equalsIgnoreCase(connection.getHeaderField("Content-Encoding"))) {
+            return SummaryDictionary.decompress(out.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
     public static URI unredirect(URI uri) throws IOException {
         if (!REDIRECTOR_DOMAINS.contains(uri.getHost())) {
             return uri;
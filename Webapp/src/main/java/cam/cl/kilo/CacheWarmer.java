@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.lookup.Barcode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fills the summary cache at startup, so that a new instance serves hot items without going to the providers.
+ * Barcodes come either from a list such as good_barcodes.txt (one barcode per line, optionally followed by
+ * a comment) or from an access log, in which case the most requested barcodes go first.
+ * Invalid barcodes are skipped, and different spellings of the same barcode are warmed once.
+ * At most a fixed number of items are summarized at once, and new items are started no faster than the
+ * provider rate cap allows.
+ *
+ * @author groupKilo
+ */
+public class CacheWarmer {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final double DEFAULT_RATE_PER_SECOND = 2;
+    public static final int DEFAULT_LIMIT = 500;
+
+    private static final Pattern BARCODE_NO = Pattern.compile("[?&]barcodeNo=([^&\\s\"]+)");
+
+    private final SummaryService service;
+    private final int concurrency;
+    private final long intervalNanos;
+    private final CompletableFuture<Integer> done = new CompletableFuture<Integer>();
+    private final AtomicInteger warmed = new AtomicInteger();
+    private volatile Thread thread;
+
+    /**
+     * @param service The service whose cache is filled
+     * @param concurrency Most items summarized at once
+     * @param ratePerSecond Most items started per second, to stay within the providers' rate limits
+     */
+    public CacheWarmer(SummaryService service, int concurrency, double ratePerSecond) {
+        this.service = service;
+        this.concurrency = concurrency;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+    }
+
+    /**
+     * Summarizes the barcodes on a background thread
+     *
+     * @param barcodes The barcodes, hottest first
+     * @return A future completing with the number of items cached once all of them are done
+     */
+    public CompletableFuture<Integer> start(final List<Barcode> barcodes) {
+        Thread t = new Thread(() -> warm(barcodes), "warmer");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+        return done;
+    }
+
+    /**
+     * Interrupts warming started by start; the items already being summarized still finish
+     */
+    public void stop() {
+        Thread t = thread;
+        if (t != null) t.interrupt();
+    }
+
+    /**
+     * Summarizes the barcodes on the calling thread
+     *
+     * @param barcodes The barcodes, hottest first
+     * @return The number of items that a provider recognised
+     */
+    public int warm(List<Barcode> barcodes) {
+        System.out.println("Warming summary cache with " + barcodes.size() + " items");
+        long start = System.nanoTime();
+        final Semaphore permits = new Semaphore(concurrency);
+        long next = System.nanoTime();
+        try {
+            for (Barcode barcode : barcodes) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                next = Math.max(next, System.nanoTime() - intervalNanos) + intervalNanos;
+
+                permits.acquire();
+                // Composed so that summarize throwing fails the future, which still releases the permit
+                CompletableFuture.completedFuture(barcode).thenCompose(service::summarize)
+                        .whenComplete((summary, t) -> {
+                            if (t != null) t.printStackTrace();
+                            else if (summary.getSummary().getTitle() != null) warmed.incrementAndGet();
+                            permits.release();
+                        });
+            }
+            permits.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.printf("Warmed %d of %d items in %dms%n", warmed.get(), barcodes.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        done.complete(warmed.get());
+        return warmed.get();
+    }
+
+    /**
+     * @return Whether warming has finished
+     */
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    /**
+     * @return Items cached so far
+     */
+    public int getWarmed() {
+        return warmed.get();
+    }
+
+    /**
+     * @param in A list with one barcode per line, optionally followed by a comment;
+     *           blank lines and lines starting with # are skipped
+     * @return The valid barcodes in the order listed, without duplicates
+     * @throws IOException If the list cannot be read
+     */
+    public static List<Barcode> readBarcodeList(Reader in) throws IOException {
+        Set<Barcode> barcodes = new LinkedHashSet<Barcode>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String barcodeNo = line.split("\\s+")[0];
+            if (Barcode.isValid(barcodeNo))
+                barcodes.add(Barcode.parse(barcodeNo));
+            else
+                System.out.println("Skipping invalid barcode " + barcodeNo);
+        }
+        return new ArrayList<Barcode>(barcodes);
+    }
+
+    /**
+     * @param in An access log whose lines hold the request URI, e.g. in Common Log Format
+     * @param limit Most barcodes to return
+     * @return The valid requested barcodes, most requested first
+     * @throws IOException If the log cannot be read
+     */
+    public static List<Barcode> readAccessLog(Reader in, int limit) throws IOException {
+        final Map<Barcode, Integer> counts = new LinkedHashMap<Barcode, Integer>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            Matcher no = BARCODE_NO.matcher(line);
+            if (!no.find()) continue;
+            String barcodeNo = decode(no.group(1));
+            if (!Barcode.isValid(barcodeNo)) continue;
+            Barcode barcode = Barcode.parse(barcodeNo);
+            Integer count = counts.get(barcode);
+            counts.put(barcode, count == null ? 1 : count + 1);
+        }
+
+        List<Barcode> hottest = new ArrayList<Barcode>(counts.keySet());
+        hottest.sort((a, b) -> counts.get(b) - counts.get(a));
+        return hottest.subList(0, Math.min(limit, hottest.size()));
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return s;
+        }
+    }
+}
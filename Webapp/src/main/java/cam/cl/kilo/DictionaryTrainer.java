@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.cache.SummaryStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Builds the preset dictionary used by SummaryDictionary from the summaries in a SummaryStore.
+ * <p>
+ * Every 8-byte sequence is counted once per summary it occurs in. Segments of the summaries are then
+ * picked greedily by the total count of the sequences they contain that no picked segment covers yet,
+ * so the dictionary holds the text shared by the most summaries with little repetition.
+ * Deflate reaches the end of the dictionary with the shortest distances, so the best segments go last.
+ * </p>
+ * Run it against a copy of the store, or with the webapp stopped, since an open store is locked:
+ * <pre>
+ * java cam.cl.kilo.DictionaryTrainer [store directory] [output file] [size]
+ * </pre>
+ * A new dictionary must be shipped as a new SummaryDictionary version, in the webapp and the Glass client
+ * together, since streams compressed with one cannot be inflated with another.
+ *
+ * @author groupKilo
+ */
+public class DictionaryTrainer {
+
+    /**
+     * Deflate refers back at most 32KB, but summaries are short enough that half of that suffices
+     */
+    public static final int DEFAULT_SIZE = 16 * 1024;
+
+    private static final int K = 8;
+    private static final int SEGMENT = 48;
+
+    /**
+     * @param samples Payloads like those that will be compressed
+     * @param maxSize Largest dictionary returned
+     * @return The dictionary, empty if no text is shared between samples
+     */
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        Map<Long, Integer> frequency = new HashMap<Long, Integer>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<Long>();
+            for (int i = 0; i + K <= sample.length; i++) {
+                Long kmer = kmer(sample, i);
+                if (seen.add(kmer)) {
+                    Integer count = frequency.get(kmer);
+                    frequency.put(kmer, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        // Text found in only one summary is not worth a place
+        frequency.values().removeIf(count -> count < 2);
+
+        PriorityQueue<Segment> candidates = new PriorityQueue<Segment>();
+        for (byte[] sample : samples) {
+            for (int start = 0; start < sample.length; start += SEGMENT / 2) {
+                Segment segment = new Segment(sample, start, Math.min(sample.length, start + SEGMENT));
+                segment.score = score(segment, frequency);
+                if (segment.score > 0) candidates.add(segment);
+            }
+        }
+
+        List<Segment> picked = new ArrayList<Segment>();
+        int size = 0;
+        while (!candidates.isEmpty() && size < maxSize) {
+            Segment best = candidates.poll();
+            // Scores only fall as text is covered, so a rescored segment still ahead of the rest is the best
+            int score = score(best, frequency);
+            if (score == 0) continue;
+            if (!candidates.isEmpty() && score < candidates.peek().score) {
+                best.score = score;
+                candidates.add(best);
+                continue;
+            }
+            // Trim bytes at either end that belong to no shared sequence
+            int start = best.start;
+            while (!frequency.containsKey(kmer(best.sample, start))) start++;
+            int end = best.end;
+            while (!frequency.containsKey(kmer(best.sample, end - K))) end--;
+            picked.add(new Segment(best.sample, start, end));
+            size += end - start;
+            for (int i = start; i + K <= end; i++)
+                frequency.remove(kmer(best.sample, i));
+        }
+
+        Collections.reverse(picked);
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (Segment segment : picked)
+            dictionary.write(segment.sample, segment.start, segment.end - segment.start);
+        byte[] bytes = dictionary.toByteArray();
+        return bytes.length <= maxSize ? bytes
+                : Arrays.copyOfRange(bytes, bytes.length - maxSize, bytes.length);
+    }
+
+    private static int score(Segment segment, Map<Long, Integer> frequency) {
+        Set<Long> counted = new HashSet<Long>();
+        int score = 0;
+        for (int i = segment.start; i + K <= segment.end; i++) {
+            Long kmer = kmer(segment.sample, i);
+            Integer count = frequency.get(kmer);
+            if (count != null && counted.add(kmer)) score += count;
+        }
+        return score;
+    }
+
+    private static long kmer(byte[] data, int offset) {
+        long kmer = 0;
+        for (int i = 0; i < K; i++)
+            kmer = (kmer << 8) | (data[offset + i] & 0xff);
+        return kmer;
+    }
+
+    private static class Segment implements Comparable<Segment> {
+        final byte[] sample;
+        final int start;
+        final int end;
+        int score;
+
+        Segment(byte[] sample, int start, int end) {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int compareTo(Segment other) {
+            return Integer.compare(other.score, score);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = args.length > 0 ? new File(args[0]) : SummaryStore.DEFAULT_DIRECTORY;
+        File out = new File(args.length > 1 ? args[1] : "kilo-summary.dict");
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SIZE;
+
+        List<byte[]> samples = new ArrayList<byte[]>();
+        SummaryStore store = SummaryStore.open(dir, SummaryStore.DEFAULT_MAX_AGE_MILLIS);
+        try {
+            for (byte[] value : store.values()) {
+                try {
+                    samples.add(EncodedSummary.fromSerialized(value).getBinary());
+                } catch (IOException e) {
+                    System.out.println("Skipping unreadable summary: " + e.getMessage());
+                }
+            }
+        } finally {
+            store.close();
+        }
+
+        byte[] dictionary = train(samples, size);
+        OutputStream os = new FileOutputStream(out);
+        try {
+            os.write(dictionary);
+        } finally {
+            os.close();
+        }
+        System.out.printf("Wrote %d byte dictionary from %d summaries to %s%n", dictionary.length, samples.size(), out);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import cam.cl.kilo.NLP.SummaryDictionary;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * A Summary together with the response bodies sent to the frontend, so that it is encoded once when
+ * produced rather than on every request. There are two representations: the Base64-encoded Java
+ * serialization that older clients expect, and the compact SummaryCodec form; each has its own entity tag.
+ * The SummaryCodec form is also kept compressed with SummaryDictionary; a content coding's entity tag is
+ * that of the representation with the coding appended, so that If-None-Match recognises any of them.
+ * The body arrays are shared by every response and must not be modified.
+ *
+ * @author groupKilo
+ */
+public class EncodedSummary {
+
+    private final Summary summary;
+    private final byte[] body;
+    private final String etag;
+    private final byte[] binary;
+    private final String binaryEtag;
+    private final byte[] compressedBinary;
+
+    private EncodedSummary(Summary summary, byte[] body) {
+        this.summary = summary;
+        this.body = body;
+        this.etag = "\"" + DigestUtils.sha1Hex(body) + "\"";
+        this.binary = SummaryCodec.encode(summary);
+        this.binaryEtag = "\"" + DigestUtils.sha1Hex(binary) + "\"";
+        this.compressedBinary = SummaryDictionary.compress(binary);
+    }
+
+    /**
+     * @param summary The Summary to send
+     * @return The Summary with both of its encodings
+     */
+    public static EncodedSummary of(Summary summary) {
+        try {
+            return new EncodedSummary(summary, Base64.encodeBase64(serialize(summary)));
+        } catch (IOException e) {
+            // Only writes to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param serialized A Summary's Java serialization, as returned by toSerialized
+     * @return The decoded Summary with its response body
+     * @throws IOException If the bytes are not a serialized Summary
+     */
+    public static EncodedSummary fromSerialized(byte[] serialized) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return new EncodedSummary((Summary) ois.readObject(), Base64.encodeBase64(serialized));
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a serialized Summary", e);
+        } finally {
+            ois.close();
+        }
+    }
+
+    private static byte[] serialize(Summary summary) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(summary);
+        oos.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * @return The Java serialization of the Summary, for persisting it
+     */
+    public byte[] toSerialized() {
+        return Base64.decodeBase64(body);
+    }
+
+    /**
+     * @return The decoded Summary
+     */
+    public Summary getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return The Base64-encoded serialized Summary, in US-ASCII; shared, do not modify
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return Quoted hash of the body, usable as an HTTP entity tag
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return The SummaryCodec encoding of the Summary; shared, do not modify
+     */
+    public byte[] getBinary() {
+        return binary;
+    }
+
+    /**
+     * @return Quoted hash of the binary encoding, usable as an HTTP entity tag
+     */
+    public String getBinaryEtag() {
+        return binaryEtag;
+    }
+
+    /**
+     * @return The binary encoding compressed with SummaryDictionary; shared, do not modify
+     */
+    public byte[] getCompressedBinary() {
+        return compressedBinary;
+    }
+
+    /**
+     * @param etag An entity tag of this summary
+     * @param coding A content coding such as gzip
+     * @return The entity tag of the representation sent with that coding
+     */
+    public static String withCoding(String etag, String coding) {
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
+
+    /**
+     * Weak comparison as used for If-None-Match: a W/ prefix is ignored
+     *
+     * @param ifNoneMatch Value of an If-None-Match header: "*" or a comma-separated list of entity tags; may be null
+     * @return True if the header names the Base64 body, so the client's copy is current
+     */
+    public boolean matches(String ifNoneMatch) {
+        return matches(ifNoneMatch, etag);
+    }
+
+    /**
+     * @param ifNoneMatch Value of an If-None-Match header; may be null
+     * @return True if the header names the binary encoding
+     */
+    public boolean matchesBinary(String ifNoneMatch) {
+        return matches(ifNoneMatch, binaryEtag);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+            if (tag.startsWith(etag.substring(0, etag.length() - 1) + "-")) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Approximate memory held: the encodings, and the Summary's strings which are about as large
+     *         as the binary one
+     */
+    public int getWeight() {
+        return body.length + 2 * binary.length + compressedBinary.length;
+    }
+}
@@ -17,26 +17,46 @@
 package cam.cl.kilo.NLP;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Class holding information about one product within Vectors, to allow for concurrent API calls
+ * Class holding information about one product within Vectors, to allow for concurrent API calls.
+ * All accessors synchronize on the instance, since several Lookups fill the same ItemInfo at once;
+ * listeners are told whenever a field gets a value, so that dependent Lookups can start straight away.
  *
  * @author groupKilo
  * @author dc561
  */
 public class ItemInfo implements Serializable {
 
+    /**
+     * The parts of an item a Lookup can fill in or depend on
+     */
+    public enum Field { TITLE, AUTHORS, DESCRIPTIONS, REVIEWS }
+
+    /**
+     * Callback for fields being filled in. It is invoked on the thread of the Lookup that set the field,
+     * without holding the ItemInfo's lock.
+     */
+    public interface Listener {
+        void published(ItemInfo info, Field field);
+    }
+
 	private static final long serialVersionUID = 2900729725728472406L;
 	private String title;
     private Vector<String> authors = new Vector<String>();
     private Vector<String> descriptions = new Vector<String>();
     private Vector<String> reviews = new Vector<String>();
+    private transient List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private transient boolean partial;
 	
     /**
 	 * @return The title
 	 */
-	public String getTitle() {
+	public synchronized String getTitle() {
 		return title;
 	}
 
@@ -44,21 +64,24 @@ public class ItemInfo implements Serializable {
 	 * @param title The title to set
 	 */
     public void setTitle(String title) {
-        if (this.title == null) {
-            if ( !title.matches("^\\s*$") ) {
-                this.title = title;
-            } else {
+        synchronized (this) {
+            if (this.title != null) {
+                System.out.println("Title already set");
+                return;
+            }
+            if (title.matches("^\\s*$")) {
                 System.out.println("Empty title");
+                return;
             }
-        } else {
-            System.out.println("Title already set");
+            this.title = title;
         }
+        publish(Field.TITLE);
     }
 
 	/**
 	 * @return The authors
 	 */
-	public Vector<String> getAuthors() {
+	public synchronized Vector<String> getAuthors() {
 		return authors;
 	}
 
@@ -66,21 +89,26 @@ public class ItemInfo implements Serializable {
 	 * @param authors The authors to set
 	 */
 	public void setAuthors(Vector<String> authors) {
-		this.authors = (authors == null) ? this.authors : authors;
+		synchronized (this) {
+			this.authors = (authors == null) ? this.authors : authors;
+		}
+		publish(Field.AUTHORS);
 	}
 
 	/**
 	 * @param author The author to add
 	 */
 	public void addAuthor(String author) {
-		
-		this.authors.add(author);
+		synchronized (this) {
+			this.authors.add(author);
+		}
+		publish(Field.AUTHORS);
 	}
 	
 	/**
 	 * @return The description
 	 */
-	public Vector<String> getDescriptions() {
+	public synchronized Vector<String> getDescriptions() {
 		return descriptions;
 	}
 
@@ -88,20 +116,26 @@ public class ItemInfo implements Serializable {
 	 * @param descriptions The description to set
 	 */
 	public void setDescriptions(Vector<String> descriptions) {
-		this.descriptions = (descriptions == null) ? this.descriptions : descriptions;
+		synchronized (this) {
+			this.descriptions = (descriptions == null) ? this.descriptions : descriptions;
+		}
+		publish(Field.DESCRIPTIONS);
 	}
 	
 	/**
 	 * @param description The description to add
 	 */
 	public void addDescription(String description) {
-		this.descriptions.add(description);
+		synchronized (this) {
+			this.descriptions.add(description);
+		}
+		publish(Field.DESCRIPTIONS);
 	}
 
 	/**
 	 * @return The reviews
 	 */
-	public Vector<String> getReviews() {
+	public synchronized Vector<String> getReviews() {
 		return reviews;
 	}
 
@@ -109,7 +143,10 @@ public class ItemInfo implements Serializable {
 	 * @param reviews the reviews to set
 	 */
 	public void setReviews(Vector<String> reviews) {
-        this.reviews = (reviews == null) ? this.reviews : reviews;
+        synchronized (this) {
+            this.reviews = (reviews == null) ? this.reviews : reviews;
+        }
+        publish(Field.REVIEWS);
 	}
 
 
@@ -117,7 +154,7 @@ public class ItemInfo implements Serializable {
      *
      * @return The descriptions' text as one String
      */
-    public String getDescriptionsAsString() {
+    public synchronized String getDescriptionsAsString() {
         StringBuilder sb = new StringBuilder();
         for (String s: descriptions) {
             sb.append(s + '\n');
@@ -129,7 +166,7 @@ public class ItemInfo implements Serializable {
      *
      * @return The reviews' text as one String
      */
-    public String getReviewsAsString() {
+    public synchronized String getReviewsAsString() {
         StringBuilder sb = new StringBuilder();
         for (String s: reviews) {
             sb.append(s + '\n');
@@ -137,4 +174,91 @@ public class ItemInfo implements Serializable {
         return sb.toString();
     }
 
+    /**
+     * @param field A field of the item
+     * @return Whether the field holds a value
+     */
+    public synchronized boolean has(Field field) {
+        switch (field) {
+            case TITLE:
+                return title != null;
+            case AUTHORS:
+                return !authors.isEmpty();
+            case DESCRIPTIONS:
+                return !descriptions.isEmpty();
+            case REVIEWS:
+                return !reviews.isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Whether no provider filled in anything
+     */
+    public synchronized boolean isEmpty() {
+        return title == null && authors.isEmpty() && descriptions.isEmpty() && reviews.isEmpty();
+    }
+
+    /**
+     * @return Whether some provider missed the deadline or failed, so the information may be incomplete
+     */
+    public synchronized boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @param partial Whether some provider missed the deadline or failed
+     */
+    public synchronized void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * @param fields Fields of the item
+     * @return Whether all of them hold a value
+     */
+    public boolean hasAll(Set<Field> fields) {
+        for (Field field : fields) {
+            if (!has(field)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param listener Called whenever a field is filled in
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener previously added
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(Field field) {
+        if (listeners == null) return;
+        for (Listener listener : listeners) {
+            listener.published(this, field);
+        }
+    }
+
+    /**
+     * Copies the current state, so that callers can keep reading it while Lookups that missed
+     * their deadline are still writing to the original.
+     *
+     * @return A new ItemInfo holding the same title, authors, descriptions and reviews
+     */
+    public synchronized ItemInfo snapshot() {
+        ItemInfo copy = new ItemInfo();
+        copy.title = title;
+        copy.authors = new Vector<String>(authors);
+        copy.descriptions = new Vector<String>(descriptions);
+        copy.reviews = new Vector<String>(reviews);
+        return copy;
+    }
+
 }
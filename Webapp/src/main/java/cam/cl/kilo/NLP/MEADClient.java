@@ -1,5 +1,7 @@
 package cam.cl.kilo.NLP;
 
+import cam.cl.kilo.concurrent.CircuitBreaker;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -20,6 +22,11 @@ import java.net.UnknownHostException;
  */
 public class MEADClient {
 	public static MEADopts Policy = new MEADopts();
+	/**
+	 * Shared by every client, so that while the MEAD server is down or too slow, exchanges fail at once
+	 * with "io problem" instead of waiting for the connection to time out.
+	 */
+	public static final CircuitBreaker BREAKER = new CircuitBreaker("MEAD");
 	/* member variables */
     protected String host = "localhost";
 	protected int port = 6969;
@@ -60,14 +67,20 @@ public class MEADClient {
 	 */
 	public String Exchange(String[] files) {
 		String sum = "";
+		if (!BREAKER.tryAcquire())
+			return "io problem: circuit breaker open";
+		long start = System.nanoTime();
 		try {
 			Connect();
 			Send(files);
 			sum = Recv();
 			Disconnect();
+			BREAKER.onSuccess(System.nanoTime() - start);
 		} catch (UnknownHostException u) {
+			BREAKER.onFailure();
 			sum = "unknown host";
 		} catch (IOException e) {
+			BREAKER.onFailure();
 			sum = "io problem";
 		}
 		return sum;
@@ -83,14 +96,20 @@ public class MEADClient {
 	 */
 	public String Exchange(String file) {
 		String sum = "";
+		if (!BREAKER.tryAcquire())
+			return "io problem: circuit breaker open";
+		long start = System.nanoTime();
 		try {
 			Connect();
 			Send(file);
 			sum = Recv();
 			Disconnect();
+			BREAKER.onSuccess(System.nanoTime() - start);
 		} catch (UnknownHostException u) {
+			BREAKER.onFailure();
 			sum = "uknown host";
 		} catch (IOException e) {
+			BREAKER.onFailure();
 			sum = "io problem";
 		}
 		return sum;
@@ -39,7 +39,7 @@ public class MashapeSummarizer extends Summarizer {
 
     }
 
-	public String summarize(String text, int sentnum, String key){
+	public static String summarize(String text, int sentnum, String key){
 		
 		String output = "";
 		
@@ -19,6 +19,7 @@ package cam.cl.kilo.NLP;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Contains the text of summarised product descriptions and reviews.
@@ -67,6 +68,19 @@ public class Summary implements Serializable {
         this.text = new ArrayList<String>(Arrays.asList(text));
     }
 
+    /**
+     * Rebuilds a Summary from its parts, e.g. when decoding it with SummaryCodec
+     * @param title The item's title, or null
+     * @param authors Item's authors/artists/producers
+     * @param text The summarised text, with BEGIN_REVIEWS before any reviews
+     */
+    public Summary(String title, List<String> authors, List<String> text) {
+        this.title = title;
+        this.authors = new ArrayList<String>(authors);
+        this.text = new ArrayList<String>(text);
+        BEGIN_REVIEWS = "BEGIN_REVIEWS";
+    }
+
 
     /**
      *
@@ -16,30 +16,58 @@
 
 package cam.cl.kilo;
 
-import cam.cl.kilo.lookup.AmznItemLookup;
-import cam.cl.kilo.lookup.GoodReadsLookup;
-import cam.cl.kilo.lookup.OMDBLookup;
 import cam.cl.kilo.NLP.ItemInfo;
-import cam.cl.kilo.NLP.MEADSummarizer;
+import cam.cl.kilo.NLP.MEADClient;
 import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import cam.cl.kilo.NLP.SummaryDictionary;
+import cam.cl.kilo.concurrent.AdmissionController;
+import cam.cl.kilo.concurrent.CircuitBreaker;
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+import cam.cl.kilo.concurrent.JobStore;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.Hedging;
+import cam.cl.kilo.lookup.HttpFetcher;
+import cam.cl.kilo.parsing.ReviewFetcher;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.pool.PoolStats;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.util.Iterator;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main class of the backend:
- * it populates an ItemInfo object by starting threads that look up product information and reviews;
+ * it populates an ItemInfo object by running lookups of product information and reviews on a shared pool;
  * it isummarizes text retrieved;
- * it serializes summary for transmission to the frontend
+ * it serializes summary for transmission to the frontend.
+ * Clients that accept application/octet-stream get the compact SummaryCodec encoding; the others get the
+ * Base64-encoded Java serialization as text/html, as before.
+ * Many items can be requested at once from /batch, e.g. when auditing a shelf.
+ * Items too slow to wait for on one request can be submitted as a job under /jobs and collected later.
+ * When the service is overloaded, new items are answered with 503 and Retry-After; load is reported by /metrics.
  *
  * @author groupKilo
  * @author rh572
@@ -48,140 +76,735 @@ import java.util.NoSuchElementException;
 @Path("/barcode")
 public class RESTBarcode {
 
+    /**
+     * Longest time a suspended request waits for its summary before the container times it out
+     */
+    public static final long ASYNC_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * The service shared by all requests, so that provider and MEAD calls run on bounded pools rather than on
+     * fresh threads. It is created, opening the persistent store, when the webapp first needs it, and never for
+     * a resource built around another service.
+     */
+    private static class Shared {
+        static final SummaryService SERVICE = new SummaryService();
+
+        /**
+         * Fills SERVICE's cache at startup, before the instance reports ready
+         */
+        static final CacheWarmer WARMER = new CacheWarmer(SERVICE,
+                Integer.getInteger("kilo.warm.concurrency", CacheWarmer.DEFAULT_CONCURRENCY),
+                Double.parseDouble(System.getProperty("kilo.warm.rate",
+                        String.valueOf(CacheWarmer.DEFAULT_RATE_PER_SECOND))));
+    }
+
+    private static final EncodedSummary MISSING_BARCODE =
+            EncodedSummary.of(new Summary("Missing barcode number. Try scanning again."));
+    private static final EncodedSummary LOOKUP_FAILED = SummaryService.LOOKUP_FAILED;
+
+    /**
+     * Media type of server-sent events
+     */
+    public static final String EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Most entries accepted in one batch request
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Most items of one batch summarized at once
+     */
+    public static final int BATCH_PARALLELISM = 8;
+
+    /**
+     * Most jobs held at once, running or finished
+     */
+    public static final int MAX_JOBS = 1024;
+
+    /**
+     * How long a finished job's summary can be collected
+     */
+    public static final long JOB_RETAIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Longest a job poll waits for the summary; shorter than ASYNC_TIMEOUT_MILLIS so that the client gets a
+     * 202 to poll again rather than the container's timeout
+     */
+    public static final long MAX_POLL_MILLIS = ASYNC_TIMEOUT_MILLIS - 5000;
+
+    /**
+     * Shared by all requests, like Shared.SERVICE, since resources are instantiated per request
+     */
+    private static final JobStore<String, EncodedSummary> JOBS =
+            new JobStore<String, EncodedSummary>(MAX_JOBS, JOB_RETAIN_MILLIS);
+
+    /**
+     * Answers job polls whose summary is not ready by the time they asked to wait for
+     */
+    private static final ScheduledExecutorService POLL_TIMER =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("job-poll"));
+
+    /**
+     * Retry-After sent with 503s when the service is overloaded
+     */
+    public static final int OVERLOAD_RETRY_SECONDS = 5;
+
+    private static final String GZIP = "gzip";
+
+    private final SummaryService service;
+    private final JobStore<String, EncodedSummary> jobs;
+
+    public RESTBarcode() {
+        this(Shared.SERVICE, JOBS);
+    }
+
+    RESTBarcode(SummaryService service) {
+        this(service, new JobStore<String, EncodedSummary>(MAX_JOBS, JOB_RETAIN_MILLIS));
+    }
+
+    RESTBarcode(SummaryService service, JobStore<String, EncodedSummary> jobs) {
+        this.service = service;
+        this.jobs = jobs;
+    }
+
 	@GET
 	@Produces(MediaType.TEXT_HTML)
 	public Response produceResponse(
             @QueryParam("barcodeNo") String barcodeNo,
-            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType) {
+            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
 
-		String encodedSummary;
-        Summary summary;
+        return summarize(barcodeNo, barcodeType, ifNoneMatch, acceptEncoding, false);
+    }
 
-		if (barcodeNo != null) {
 
-			//Make API calls and gather item information
-            ItemInfo info = populateItemInfo(barcodeNo, barcodeType);
+    /**
+     * Same as produceResponse, for clients that accept the binary encoding
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @param ifNoneMatch Entity tags of the copies the client holds, if any
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @return Response holding the SummaryCodec-encoded Summary, or a 304
+     */
+    @GET
+    @Produces(SummaryCodec.MEDIA_TYPE)
+    public Response produceBinaryResponse(
+            @QueryParam("barcodeNo") String barcodeNo,
+            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+
+        return summarize(barcodeNo, barcodeType, ifNoneMatch, acceptEncoding, true);
+    }
 
-            // Summarize text in ItemInfo and create a Summary object
-            summary = generateSummary(info);
 
-        } else {
-            summary = new Summary("Missing barcode number. Try scanning again.");
-        }
+    private Response summarize(String barcodeNo, String barcodeType, String ifNoneMatch, String acceptEncoding,
+                               boolean binary) {
+        if (barcodeNo == null)
+            return buildResponse(MISSING_BARCODE, ifNoneMatch, acceptEncoding, binary);
 
-        // Serialize Summary object
         try {
-            encodedSummary = toString(summary);
-        } catch (IOException e) {
-            e.printStackTrace();
-            encodedSummary = e.getMessage();
+            //Make API calls, gather item information and summarize it
+            EncodedSummary summary = service.summarize(barcodeNo, barcodeType).join();
+            return buildResponse(summary, ifNoneMatch, acceptEncoding, binary);
+        } catch (CompletionException e) {
+            return buildFailure(e, ifNoneMatch, acceptEncoding, binary);
         }
+    }
+
+
+    /**
+     * Same as produceResponse, but the container thread is released while lookups and
+     * summarization run; the response is written from the pool that finishes the summary.
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @param ifNoneMatch Entity tags of the copies the client holds, if any
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @param response Handle used to complete the suspended request
+     */
+    @GET
+    @Path("/async")
+    @Produces(MediaType.TEXT_HTML)
+    public void produceAsyncResponse(
+            @QueryParam("barcodeNo") String barcodeNo,
+            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) final String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) final AsynchronousResponse response) {
 
-        return Response.ok(encodedSummary).build();
+        summarizeAsync(barcodeNo, barcodeType, ifNoneMatch, acceptEncoding, false, response);
     }
 
 
     /**
-     * Make different API calls according to the item's type
+     * Same as produceAsyncResponse, for clients that accept the binary encoding
      *
      * @param barcodeNo The item's barcode number
-     * @param barcodeType The type of the barcode (ISBN, UPC or other)
-     * @return ItemInfo object with item information
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @param ifNoneMatch Entity tags of the copies the client holds, if any
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @param response Handle used to complete the suspended request
      */
-    public static ItemInfo populateItemInfo(String barcodeNo, String barcodeType) {
-        ItemInfo info = new ItemInfo();
+    @GET
+    @Path("/async")
+    @Produces(SummaryCodec.MEDIA_TYPE)
+    public void produceAsyncBinaryResponse(
+            @QueryParam("barcodeNo") String barcodeNo,
+            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) final String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) final AsynchronousResponse response) {
+
+        summarizeAsync(barcodeNo, barcodeType, ifNoneMatch, acceptEncoding, true, response);
+    }
 
-        Thread tAmzn = new Thread(new AmznItemLookup(barcodeNo, barcodeType, info));
-        Thread tGR = new Thread(new GoodReadsLookup(barcodeNo, barcodeType, info));
 
-        tAmzn.start();
+    private void summarizeAsync(String barcodeNo, String barcodeType, final String ifNoneMatch,
+                                final String acceptEncoding, final boolean binary,
+                                final AsynchronousResponse response) {
+        if (barcodeNo == null) {
+            response.setResponse(buildResponse(MISSING_BARCODE, ifNoneMatch, acceptEncoding, binary));
+            return;
+        }
 
-        if ("ISBN".equals(barcodeType)) tGR.start();
+        service.summarize(barcodeNo, barcodeType).whenComplete((summary, t) -> {
+            if (t != null)
+                response.setResponse(buildFailure(t, ifNoneMatch, acceptEncoding, binary));
+            else
+                response.setResponse(buildResponse(summary, ifNoneMatch, acceptEncoding, binary));
+        });
+    }
 
-        while(tAmzn.isAlive() || tGR.isAlive());
 
-        if (!"ISBN".equals(barcodeType)) {
-            Thread tOMDB = new Thread(new OMDBLookup(barcodeNo, barcodeType, info));
-            while(tOMDB.isAlive());
+    /**
+     * Streams the summary as server-sent events, so that the client can show the title while the reviews are
+     * still being summarized. Each event's data is a Base64-encoded SummaryCodec Summary holding everything
+     * known so far: "partial" events carry the title and authors, then the description summary, and a final
+     * "summary" event carries the complete Summary before the stream ends. Cached items get only the final event.
+     * The final event's id is the entity tag of the summary's binary encoding, so that the client can revalidate
+     * it later with If-None-Match on the single-item resource.
+     * The request is suspended and each event written by the callback that produced it, so no container thread
+     * waits for the summary; if it is not ready within MAX_POLL_MILLIS, the stream ends with a failure summary.
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @param servletResponse The response the events are written to
+     * @param response Handle used to end the suspended request once the final event is written
+     * @throws IOException If the response cannot be written
+     */
+    @GET
+    @Path("/stream")
+    @Produces(EVENT_STREAM)
+    public void produceStream(
+            @QueryParam("barcodeNo") String barcodeNo,
+            @DefaultValue("ISBN") @QueryParam("barcodeType") String barcodeType,
+            @Context HttpServletResponse servletResponse,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) AsynchronousResponse response) throws IOException {
+
+        servletResponse.setStatus(HttpServletResponse.SC_OK);
+        servletResponse.setContentType(EVENT_STREAM);
+        servletResponse.setHeader("Cache-Control", "no-cache");
+        stream(barcodeNo, barcodeType, servletResponse.getOutputStream(), response);
+    }
+
+
+    void stream(String barcodeNo, String barcodeType, OutputStream out, AsynchronousResponse response) {
+        final EventStream events = new EventStream(out, response);
+        if (barcodeNo == null) {
+            events.send("summary", MISSING_BARCODE.getSummary());
+            return;
         }
 
-        return info;
+        final ScheduledFuture<?> timer = POLL_TIMER.schedule(
+                () -> events.send("summary", LOOKUP_FAILED.getSummary()), MAX_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        service.summarize(barcodeNo, barcodeType, summary -> events.send("partial", summary))
+                .whenComplete((summary, t) -> {
+                    timer.cancel(false);
+                    if (t != null) {
+                        t.printStackTrace();
+                        events.send("summary", LOOKUP_FAILED.getSummary());
+                    } else {
+                        events.send("summary", summary.getSummary(), summary.getBinaryEtag());
+                    }
+                });
     }
 
 
     /**
-     * Given an ItemInfo, initialise two Summarizer objects, one for descriptions and one for reviews.
-     * In case of MEAD failure or other errors, the full text is returned.
+     * Writes the events of one stream in turn, from whichever thread produced them, and ends the request
+     * after the final "summary" event
+     */
+    private static class EventStream {
+        private final OutputStream out;
+        private final AsynchronousResponse response;
+        // Guarded by this
+        private boolean finished;
+
+        EventStream(OutputStream out, AsynchronousResponse response) {
+            this.out = out;
+            this.response = response;
+        }
+
+        void send(String name, Summary summary) {
+            send(name, summary, null);
+        }
+
+        /**
+         * @param id The event's id, or null for none
+         */
+        synchronized void send(String name, Summary summary, String id) {
+            if (finished) return;
+            boolean last = name.equals("summary");
+            try {
+                out.write(("event: " + name + "\ndata: " + Base64.encodeBase64String(SummaryCodec.encode(summary))
+                        + (id == null ? "" : "\nid: " + id) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                // The client has gone away; end the request rather than write to it again
+                System.out.println("Event stream closed by client: " + e.getMessage());
+                last = true;
+            }
+            if (last) {
+                finished = true;
+                response.setResponse(Response.ok().build());
+            }
+        }
+    }
+
+
+    /**
+     * Summarizes many items in one request and sends them back in one SummaryBatch-framed body, so that
+     * auditing a shelf costs one connection and one response rather than one per book. Entries are
+     * separated by whitespace or commas; duplicates are summarized once, and at most BATCH_PARALLELISM
+     * items are looked up at a time. Like the single-item resources, the frame is sent with the
+     * SummaryDictionary coding or gzipped when the client accepts it.
      *
-     * @param info A populated ItemInfo
-     * @return A Summary object holding summarized text
+     * @param barcodes The items' barcode numbers, at most MAX_BATCH_SIZE of them
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @param response Handle used to complete the suspended request: the framed summaries, or
+     *                 400 if there are no barcodes and 413 if there are too many
      */
-    public static Summary generateSummary(ItemInfo info) {
-        MEADSummarizer descriptionSummarizer, reviewSummarizer;
-        String summarizedDescriptions, summarizedReviews;
+    @POST
+    @Path("/batch")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(SummaryCodec.MEDIA_TYPE)
+    public void produceBatchResponse(
+            String barcodes,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) final AsynchronousResponse response) {
+
+        String trimmed = barcodes == null ? "" : barcodes.trim();
+        List<String> barcodeNos = trimmed.isEmpty() ? Collections.<String>emptyList()
+                : Arrays.asList(trimmed.split("[\\s,]+"));
+        if (barcodeNos.isEmpty()) {
+            response.setResponse(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("No barcodes").type(MediaType.TEXT_PLAIN).build());
+            return;
+        }
+        if (barcodeNos.size() > MAX_BATCH_SIZE) {
+            // JAX-RS 1.1 has no constant for 413 Request Entity Too Large
+            response.setResponse(Response.status(413)
+                    .entity("At most " + MAX_BATCH_SIZE + " barcodes per batch").type(MediaType.TEXT_PLAIN).build());
+            return;
+        }
+
+        service.summarizeAll(barcodeNos, BATCH_PARALLELISM).whenComplete((summaries, t) -> {
+            if (t != null) {
+                t.printStackTrace();
+                response.setResponse(Response.serverError().build());
+                return;
+            }
+            response.setResponse(buildBatchResponse(SummaryBatch.encode(summaries), acceptEncoding));
+        });
+    }
+
+
+    /**
+     * @param batch A framed batch
+     * @param acceptEncoding The client's Accept-Encoding header, or null
+     * @return Response holding the batch, compressed as the client prefers
+     */
+    static Response buildBatchResponse(byte[] batch, String acceptEncoding) {
+        Response.ResponseBuilder builder;
+        if (accepts(acceptEncoding, SummaryDictionary.ENCODING)) {
+            builder = Response.ok(SummaryDictionary.compress(batch), SummaryCodec.MEDIA_TYPE)
+                    .header(HttpHeaders.CONTENT_ENCODING, SummaryDictionary.ENCODING);
+        } else {
+            builder = Response.ok(batch, SummaryCodec.MEDIA_TYPE);
+            if (accepts(acceptEncoding, GZIP))
+                builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+
+    /**
+     * Starts summarizing an item in the background and answers straight away with the job's id, under which
+     * the summary can be collected from /jobs/{id}. The work carries on whether or not the client stays
+     * connected, and submitting an item that already has a job returns that job.
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @return 202 with the job id and its Location, 400 without a barcode, or 503 if too many jobs are running
+     */
+    @POST
+    @Path("/jobs")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response submitJob(
+            @QueryParam("barcodeNo") final String barcodeNo,
+            @DefaultValue("ISBN") @QueryParam("barcodeType") final String barcodeType) {
+
+        if (barcodeNo == null)
+            return Response.status(Response.Status.BAD_REQUEST).entity("Missing barcode number").build();
+
+        String key = Barcode.isValid(barcodeNo) ? Barcode.parse(barcodeNo).toString() : barcodeNo;
+        JobStore.Job<String, EncodedSummary> job = jobs.submit(key, () -> service.summarize(barcodeNo, barcodeType));
+        if (job == null)
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", OVERLOAD_RETRY_SECONDS)
+                    .entity("Too many jobs").build();
+        return Response.status(Response.Status.ACCEPTED).header(HttpHeaders.LOCATION, "jobs/" + job.getId())
+                .entity(job.getId()).build();
+    }
 
-        // Handle both summarizers in same try/catch: if there is an IO error from MEAD, it is likely to affect both
+
+    /**
+     * Collects a job's summary. Without wait, or once the summary is ready, this answers at once; otherwise
+     * it is held for up to wait seconds, but at most MAX_POLL_MILLIS, while the summary is produced.
+     * The container thread is released in the meantime.
+     *
+     * @param id The job id returned by submitJob
+     * @param waitSeconds How long to wait for the summary
+     * @param ifNoneMatch Entity tags of the copies the client holds, if any
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @param response Handle used to complete the suspended request: the summary as produceResponse sends it,
+     *                 202 with Retry-After if it is not ready yet, or 404 for unknown or forgotten jobs
+     */
+    @GET
+    @Path("/jobs/{id}")
+    @Produces(MediaType.TEXT_HTML)
+    public void pollJob(
+            @PathParam("id") String id,
+            @DefaultValue("0") @QueryParam("wait") int waitSeconds,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) AsynchronousResponse response) {
+
+        pollJob(id, waitSeconds, ifNoneMatch, acceptEncoding, false, response);
+    }
+
+
+    /**
+     * Same as pollJob, for clients that accept the binary encoding
+     *
+     * @param id The job id returned by submitJob
+     * @param waitSeconds How long to wait for the summary
+     * @param ifNoneMatch Entity tags of the copies the client holds, if any
+     * @param acceptEncoding Content codings the client accepts, if any
+     * @param response Handle used to complete the suspended request
+     */
+    @GET
+    @Path("/jobs/{id}")
+    @Produces(SummaryCodec.MEDIA_TYPE)
+    public void pollBinaryJob(
+            @PathParam("id") String id,
+            @DefaultValue("0") @QueryParam("wait") int waitSeconds,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+            @Suspend(ASYNC_TIMEOUT_MILLIS) AsynchronousResponse response) {
+
+        pollJob(id, waitSeconds, ifNoneMatch, acceptEncoding, true, response);
+    }
+
+
+    private void pollJob(String id, int waitSeconds, final String ifNoneMatch, final String acceptEncoding,
+                         final boolean binary, final AsynchronousResponse response) {
+        final JobStore.Job<String, EncodedSummary> job = jobs.get(id);
+        if (job == null) {
+            response.setResponse(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+
+        long waitMillis = Math.min(TimeUnit.SECONDS.toMillis(Math.max(0, waitSeconds)), MAX_POLL_MILLIS);
+        if (job.getResult().isDone() || waitMillis == 0) {
+            response.setResponse(buildJobResponse(job, ifNoneMatch, acceptEncoding, binary));
+            return;
+        }
+
+        // Whichever of the summary and the timer comes first answers the poll
+        final AtomicBoolean answered = new AtomicBoolean();
+        final ScheduledFuture<?> timer = POLL_TIMER.schedule(() -> {
+            if (answered.compareAndSet(false, true))
+                response.setResponse(buildJobResponse(job, ifNoneMatch, acceptEncoding, binary));
+        }, waitMillis, TimeUnit.MILLISECONDS);
+        job.getResult().whenComplete((summary, t) -> {
+            if (answered.compareAndSet(false, true)) {
+                timer.cancel(false);
+                response.setResponse(buildJobResponse(job, ifNoneMatch, acceptEncoding, binary));
+            }
+        });
+    }
+
+
+    private static Response buildJobResponse(JobStore.Job<String, EncodedSummary> job, String ifNoneMatch,
+                                             String acceptEncoding, boolean binary) {
+        CompletableFuture<EncodedSummary> result = job.getResult();
+        if (!result.isDone())
+            return Response.status(Response.Status.ACCEPTED).header("Retry-After", 1)
+                    .header(HttpHeaders.LOCATION, job.getId()).build();
         try {
-            descriptionSummarizer = new MEADSummarizer(info.getDescriptions(), 5);
-            reviewSummarizer = new MEADSummarizer(info.getReviews(), 5);
+            return buildResponse(result.join(), ifNoneMatch, acceptEncoding, binary);
+        } catch (CompletionException e) {
+            return buildFailure(e, ifNoneMatch, acceptEncoding, binary);
+        }
+    }
 
-            if (! descriptionSummarizer.isEmpty()) {
-                summarizedDescriptions = descriptionSummarizer.getSummary();
-                System.out.println("Description summarization successful");
-            } else {
-                try {
-                    summarizedDescriptions = info.getDescriptions().firstElement();
-                } catch (NoSuchElementException nsee) {
-                    summarizedDescriptions = "No description available for this item.";
-                }
-                System.out.println("Empty description summary");
+
+    /**
+     * @param t Why a summary could not be produced
+     * @param ifNoneMatch The client's If-None-Match header, or null
+     * @param acceptEncoding The client's Accept-Encoding header, or null
+     * @param binary Whether the client asked for the binary encoding
+     * @return 503 with Retry-After if the service was overloaded, otherwise LOOKUP_FAILED
+     */
+    private static Response buildFailure(Throwable t, String ifNoneMatch, String acceptEncoding, boolean binary) {
+        if (AdmissionController.isRejection(t))
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", OVERLOAD_RETRY_SECONDS).build();
+        t.printStackTrace();
+        return buildResponse(LOOKUP_FAILED, ifNoneMatch, acceptEncoding, binary);
+    }
+
+
+    /**
+     * Load, cache, hedging, circuit breaker, provider connection and review page statistics, one "name value" pair per line
+     *
+     * @return Response with the current values
+     */
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response metrics() {
+        AdmissionController admission = service.getAdmission();
+        StringBuilder out = new StringBuilder();
+        metric(out, "admission_in_flight", admission.getInFlight());
+        metric(out, "admission_queue_depth", admission.getQueueDepth());
+        metric(out, "admission_admitted_total", admission.getAdmitted());
+        metric(out, "admission_queued_total", admission.getQueued());
+        metric(out, "admission_rejected_total", admission.getRejected());
+        metric(out, "admission_degraded_total", admission.getDegraded());
+        metric(out, "cache_size", service.getCache().size());
+        metric(out, "cache_hits_total", service.getCache().getHitCount());
+        metric(out, "cache_misses_total", service.getCache().getMissCount());
+        metric(out, "lookups_started_total", service.getFlights().getStarted());
+        metric(out, "lookups_coalesced_total", service.getFlights().getCoalesced());
+        metric(out, "jobs", jobs.size());
+        metric(out, "jobs_rejected_total", jobs.getRejected());
+        Hedging hedging = service.getHedging();
+        if (hedging != null) {
+            for (String provider : hedging.getProviders()) {
+                String name = "{name=\"" + provider + "\"}";
+                metric(out, "hedge_delay_millis" + name, hedging.getDelayMillis(provider));
+                metric(out, "hedges_total" + name, hedging.getHedges(provider));
+                metric(out, "hedge_wins_total" + name, hedging.getWins(provider));
             }
+        }
+        List<CircuitBreaker> breakers = new ArrayList<CircuitBreaker>(service.getBreakers().all());
+        breakers.add(MEADClient.BREAKER);
+        for (CircuitBreaker breaker : breakers) {
+            String name = "{name=\"" + breaker.getName() + "\"}";
+            metric(out, "breaker_open" + name, breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1);
+            metric(out, "breaker_opened_total" + name, breaker.getOpened());
+            metric(out, "breaker_rejected_total" + name, breaker.getRejected());
+        }
+        HttpFetcher http = HttpFetcher.getShared();
+        PoolStats pool = http.getPoolStats();
+        metric(out, "http_connections_leased", pool.getLeased());
+        metric(out, "http_connections_idle", pool.getAvailable());
+        metric(out, "http_connections_pending", pool.getPending());
+        for (String host : http.getHosts()) {
+            String name = "{host=\"" + host + "\"}";
+            metric(out, "http_requests_total" + name, http.getRequests(host));
+            metric(out, "http_failures_total" + name, http.getFailures(host));
+            metric(out, "http_received_bytes_total" + name, http.getBytes(host));
+        }
+        ReviewFetcher reviews = ReviewFetcher.getShared();
+        metric(out, "review_pages_waiting", reviews.getWaiting());
+        metric(out, "review_pages_fetched_total", reviews.getFetched());
+        metric(out, "review_pages_failed_total", reviews.getFailed());
+        metric(out, "review_pages_timed_out_total", reviews.getTimedOut());
+        metric(out, "review_pages_cancelled_total", reviews.getCancelled());
+        return Response.ok(out.toString()).header("Cache-Control", "no-cache").build();
+    }
+
+
+    private static void metric(StringBuilder out, String name, long value) {
+        out.append("kilo_").append(name).append(' ').append(value).append('\n');
+    }
+
+
+    /**
+     * Readiness check for the load balancer: 503 while the cache is being warmed, 200 afterwards
+     *
+     * @return Response with the number of items warmed
+     */
+    @GET
+    @Path("/ready")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response ready() {
+        if (!Shared.WARMER.isDone())
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", 5).entity("warming, " + Shared.WARMER.getWarmed() + " items cached").build();
+        return Response.ok("ready, " + Shared.WARMER.getWarmed() + " items warmed").build();
+    }
 
-            if (! reviewSummarizer.isEmpty()) {
-                summarizedReviews = reviewSummarizer.getSummary();
-                System.out.println("Review summarization successful");
+
+    /**
+     * Starts warming the cache in the background, from the access log named by the kilo.warm.log system
+     * property if set, otherwise from the list named by kilo.warm.list, or else from the bundled
+     * good_barcodes.txt
+     */
+    static void startWarmup() {
+        List<Barcode> barcodes;
+        String log = System.getProperty("kilo.warm.log");
+        String list = System.getProperty("kilo.warm.list");
+        int limit = Integer.getInteger("kilo.warm.limit", CacheWarmer.DEFAULT_LIMIT);
+        try {
+            if (log != null) {
+                barcodes = CacheWarmer.readAccessLog(new InputStreamReader(new FileInputStream(log), "UTF-8"), limit);
+            } else if (list != null) {
+                barcodes = CacheWarmer.readBarcodeList(new InputStreamReader(new FileInputStream(list), "UTF-8"));
             } else {
-                try {
-                    summarizedReviews = info.getReviews().firstElement();
-                } catch (NoSuchElementException nsee) {
-                    summarizedReviews = "No reviews available for this item.";
-                }
-                System.out.println("Empty reviews summary");
+                InputStream in = RESTBarcode.class.getResourceAsStream("/good_barcodes.txt");
+                barcodes = in == null ? Collections.<Barcode>emptyList()
+                        : CacheWarmer.readBarcodeList(new InputStreamReader(in, "UTF-8"));
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            barcodes = Collections.emptyList();
+        }
+        Shared.WARMER.start(barcodes.subList(0, Math.min(limit, barcodes.size())));
+    }
 
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-            summarizedDescriptions = info.getDescriptions().firstElement();
-            summarizedReviews = info.getReviews().firstElement();
+    /**
+     * Stops warming and the shared pools and closes the persistent store, so that an undeployed webapp
+     * releases the store's lock and leaves no threads holding on to its classes
+     */
+    static void shutdown() {
+        Shared.WARMER.stop();
+        Shared.SERVICE.shutdown();
+        POLL_TIMER.shutdownNow();
+        ReviewFetcher.getShared().shutdown();
+        try {
+            HttpFetcher.getShared().close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
-        System.out.println("SUMMARISED DESCRIPTIONS");
-        System.out.println(summarizedDescriptions);
-        System.out.println("ORIGINAL DESCRIPTIONS");
-        ppList(info.getDescriptions());
 
-        System.out.println("SUMMARISED REVIEWS");
-        System.out.println(summarizedReviews);
-        System.out.println("ORIGINAL REVIEWS");
-        ppList(info.getReviews());
+    /**
+     * Make different API calls according to the item's type
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @return ItemInfo object with item information
+     */
+    public static ItemInfo populateItemInfo(String barcodeNo, String barcodeType) {
+        return Shared.SERVICE.populateItemInfo(barcodeNo, barcodeType).join();
+    }
 
-        return new Summary(info, summarizedDescriptions, summarizedReviews);
+
+    /**
+     * Given an ItemInfo, initialise two Summarizer objects, one for descriptions and one for reviews.
+     * In case of MEAD failure or other errors, the full text is returned.
+     *
+     * @param info A populated ItemInfo
+     * @return A Summary object holding summarized text
+     */
+    public static Summary generateSummary(ItemInfo info) {
+        return Shared.SERVICE.generateSummary(info);
     }
 
 
     /**
-     * Serialise an object as a Base 64 string.
+     * Send an already encoded Summary; its bytes are written as they are.
+     * If the client already holds it, only its entity tag is sent back with 304 Not Modified.
+     * Clients accepting gzip get it gzipped by RESTEasy's GZIPEncodingInterceptor, which compresses any
+     * response whose Content-Encoding is gzip.
      *
-     * @param o The object to serialise
-     * @return Base64-encoded string.
-     * @throws IOException
+     * @param summary The encoded Summary to send
+     * @param ifNoneMatch The client's If-None-Match header, or null
+     * @param acceptEncoding The client's Accept-Encoding header, or null
+     * @return Response holding the Base64-encoded Summary, or a 304
+     */
+    static Response buildResponse(EncodedSummary summary, String ifNoneMatch, String acceptEncoding) {
+        String coding = accepts(acceptEncoding, GZIP) ? GZIP : null;
+        String etag = coding == null ? summary.getEtag() : EncodedSummary.withCoding(summary.getEtag(), coding);
+        if (summary.matches(ifNoneMatch))
+            return variant(Response.notModified(), etag, null);
+        return variant(Response.ok(summary.getBody(), MediaType.TEXT_HTML_TYPE), etag, coding);
+    }
+
+
+    /**
+     * Same as buildResponse, but sends the SummaryCodec encoding under its own entity tag.
+     * Clients that accept the SummaryDictionary coding get the precompressed bytes, which are far smaller
+     * than gzip manages for payloads this short.
+     *
+     * @param summary The encoded Summary to send
+     * @param ifNoneMatch The client's If-None-Match header, or null
+     * @param acceptEncoding The client's Accept-Encoding header, or null
+     * @return Response holding the binary Summary, or a 304
+     */
+    static Response buildBinaryResponse(EncodedSummary summary, String ifNoneMatch, String acceptEncoding) {
+        String coding = accepts(acceptEncoding, SummaryDictionary.ENCODING) ? SummaryDictionary.ENCODING
+                : accepts(acceptEncoding, GZIP) ? GZIP : null;
+        String etag = coding == null ? summary.getBinaryEtag()
+                : EncodedSummary.withCoding(summary.getBinaryEtag(), coding);
+        if (summary.matchesBinary(ifNoneMatch))
+            return variant(Response.notModified(), etag, null);
+        byte[] entity = SummaryDictionary.ENCODING.equals(coding) ? summary.getCompressedBinary() : summary.getBinary();
+        return variant(Response.ok(entity, SummaryCodec.MEDIA_TYPE), etag, coding);
+    }
+
+
+    private static Response buildResponse(EncodedSummary summary, String ifNoneMatch, String acceptEncoding,
+                                          boolean binary) {
+        return binary ? buildBinaryResponse(summary, ifNoneMatch, acceptEncoding)
+                : buildResponse(summary, ifNoneMatch, acceptEncoding);
+    }
+
+
+    private static Response variant(Response.ResponseBuilder builder, String etag, String coding) {
+        builder.header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (coding != null)
+            builder.header(HttpHeaders.CONTENT_ENCODING, coding);
+        return builder.build();
+    }
+
+
+    /**
+     * @param acceptEncoding An Accept-Encoding header, or null
+     * @param coding A content coding
+     * @return Whether the header lists the coding without q=0
      */
-    private static String toString(Serializable o) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(o);
-        oos.close();
-        return Base64.encodeBase64String(baos.toByteArray());
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) return false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(coding)) continue;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].replace(" ", "");
+                if (param.matches("q=0(\\.0*)?")) return false;
+            }
+            return true;
+        }
+        return false;
     }
 
 
@@ -191,16 +814,12 @@ public class RESTBarcode {
      * @param l A List
      */
     public static void ppList(List<String> l) {
-        Iterator itr = l.iterator();
-        int i = 0;
-        while (itr.hasNext()) {
-            System.out.printf("[%d]\n%s\n", ++i, itr.next());
-        }
+        SummaryService.ppList(l);
     }
 
 
     public static void main(String[] args) {
         RESTBarcode test = new RESTBarcode();
-        test.produceResponse("144932391X", "ISBN");
+        test.produceResponse("144932391X", "ISBN", null, null);
     }
 }
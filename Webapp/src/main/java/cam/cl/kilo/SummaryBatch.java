@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Framing of a batch response: many SummaryCodec-encoded summaries in one body, each under the barcode it
+ * answers.
+ * <pre>
+ * byte    magic 'B'
+ * byte    version, currently 1
+ * varint  number of entries, then for each entry:
+ * string  key: the canonical barcode, e.g. ISBN:9780201616224, or the request's entry if it was invalid
+ * varint  byte count of the summary, then the summary's SummaryCodec encoding
+ * </pre>
+ * Strings and varints are as in SummaryCodec, and written and read with its helpers. The encoded summaries are copied as they are, so a batch
+ * costs no more encoding than the single-item responses.
+ *
+ * @author groupKilo
+ */
+public final class SummaryBatch {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 'B';
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SummaryBatch() {
+    }
+
+    /**
+     * @param summaries The encoded summaries by key, in the order to send them
+     * @return The framed batch
+     */
+    public static byte[] encode(Map<String, EncodedSummary> summaries) {
+        int size = 8;
+        for (Map.Entry<String, EncodedSummary> entry : summaries.entrySet())
+            size += entry.getKey().length() + entry.getValue().getBinary().length + 8;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write(MAGIC);
+        out.write(VERSION);
+        SummaryCodec.writeVarint(out, summaries.size());
+        for (Map.Entry<String, EncodedSummary> entry : summaries.entrySet()) {
+            SummaryCodec.writeBytes(out, entry.getKey().getBytes(UTF8));
+            SummaryCodec.writeBytes(out, entry.getValue().getBinary());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data A framed batch produced by encode
+     * @return The decoded summaries by key, in the order sent
+     * @throws IOException If the data is truncated, malformed or of an unknown version
+     */
+    public static Map<String, Summary> decode(byte[] data) throws IOException {
+        SummaryCodec.Reader in = new SummaryCodec.Reader(data, "summary batch");
+        if (in.readByte() != MAGIC)
+            throw new IOException("Not a summary batch");
+        int version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported summary batch version " + version);
+
+        int count = in.readVarint();
+        Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+        for (int i = 0; i < count; i++) {
+            String key = in.readString();
+            summaries.put(key, SummaryCodec.decode(in.readBytes()));
+        }
+        if (in.remaining() != 0)
+            throw new IOException("Trailing bytes after summary batch");
+        return summaries;
+    }
+}
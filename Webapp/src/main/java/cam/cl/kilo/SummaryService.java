@@ -0,0 +1,680 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.MEADSummarizer;
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.cache.SummaryStore;
+import cam.cl.kilo.cache.TinyLfuCache;
+import cam.cl.kilo.concurrent.AdmissionController;
+import cam.cl.kilo.concurrent.CircuitBreakers;
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+import cam.cl.kilo.concurrent.SingleFlight;
+import cam.cl.kilo.lookup.AmznItemLookup;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.GoodReadsLookup;
+import cam.cl.kilo.lookup.Hedging;
+import cam.cl.kilo.lookup.Lookup;
+import cam.cl.kilo.lookup.LookupEngine;
+import cam.cl.kilo.lookup.OMDBLookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a barcode into a Summary without tying up the caller's thread:
+ * lookups run on the LookupEngine's pool and MEAD summarization on a separate pool,
+ * and the result is delivered through a CompletableFuture.
+ * Finished summaries are encoded once, cached in memory and persisted across restarts, and identical requests
+ * arriving while an item is being looked up share the same result.
+ * Cached summaries go stale before they expire: a stale summary is still served straight away, while it is
+ * recomputed on separate low-priority pools so that refreshes never hold up interactive scans.
+ * Callers that want to show something before the summary is done can follow a lookup's Progress:
+ * the title and authors as soon as a provider sets them, then the description summary.
+ * Lookups not answered from the caches go through an AdmissionController. Under overload, items that had to
+ * queue are summarized from their descriptions only and not cached, and once the queue is full new items
+ * fail with RejectedExecutionException, while cached items are still served.
+ *
+ * @author groupKilo
+ */
+public class SummaryService {
+
+    public static final int DEFAULT_SUMMARY_THREADS = 8;
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_CACHE_ENTRIES = 16384;
+    public static final long DEFAULT_CACHE_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis(6);
+    public static final int DEFAULT_REFRESH_THREADS = 2;
+    public static final int DEFAULT_NEGATIVE_CACHE_ENTRIES = 4096;
+    public static final long DEFAULT_NEGATIVE_CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    public static final int DEFAULT_MAX_QUEUED = 64;
+
+    private static final String NO_DESCRIPTION = "No description available for this item.";
+    private static final String NO_REVIEWS = "No reviews available for this item.";
+    private static final String REVIEWS_DEFERRED = "Reviews are not available right now. Try again later.";
+
+    /**
+     * Answer to barcodes that fail validation, which are never looked up
+     */
+    public static final EncodedSummary INVALID_BARCODE =
+            EncodedSummary.of(new Summary("Invalid barcode. Try scanning again."));
+
+    /**
+     * Answer to lookups that failed unexpectedly
+     */
+    public static final EncodedSummary LOOKUP_FAILED =
+            EncodedSummary.of(new Summary("Lookup failed. Try scanning again."));
+
+    /**
+     * What generateSummary produces when no provider recognises the barcode
+     */
+    public static final EncodedSummary NOT_FOUND =
+            EncodedSummary.of(new Summary(new ItemInfo(), NO_DESCRIPTION, NO_REVIEWS));
+
+    /**
+     * Receives partial summaries of an item while it is looked up and summarized.
+     * Each one holds everything known so far, so a receiver can simply show the latest.
+     * Calls come from the lookup and summary pools and must not block.
+     */
+    public interface Progress {
+        void partial(Summary summary);
+    }
+
+    private static final Progress NO_PROGRESS = summary -> { };
+
+    /**
+     * Chooses the providers to query for a barcode
+     */
+    public interface LookupFactory {
+        List<Lookup> create(String barcodeNo, String barcodeType, ItemInfo info);
+    }
+
+    /**
+     * Amazon for every item, then GoodReads for books or OMDB, fed by Amazon's title, for anything else
+     */
+    public static final LookupFactory PROVIDERS = new LookupFactory() {
+        @Override
+        public List<Lookup> create(String barcodeNo, String barcodeType, ItemInfo info) {
+            List<Lookup> lookups = new ArrayList<Lookup>();
+            lookups.add(new AmznItemLookup(barcodeNo, barcodeType, info));
+            if (Barcode.ISBN.equals(barcodeType))
+                lookups.add(new GoodReadsLookup(barcodeNo, barcodeType, info));
+            else
+                lookups.add(new OMDBLookup(barcodeNo, barcodeType, info));
+            return lookups;
+        }
+    };
+
+    private final LookupEngine engine;
+    private final LookupEngine refreshEngine;
+    private final LookupFactory lookups;
+    private final ExecutorService summaryExecutor;
+    private final ExecutorService refreshExecutor;
+    private final int maxRefreshes;
+    private final TinyLfuCache<String, EncodedSummary> cache;
+    private final SummaryStore store;
+    private final AdmissionController admission;
+    private final TinyLfuCache<String, EncodedSummary> negativeCache =
+            new TinyLfuCache<String, EncodedSummary>(DEFAULT_NEGATIVE_CACHE_ENTRIES, DEFAULT_NEGATIVE_CACHE_ENTRIES,
+                    DEFAULT_NEGATIVE_CACHE_TTL_MILLIS, summary -> 1);
+    private final SingleFlight<String, EncodedSummary> flights = new SingleFlight<String, EncodedSummary>();
+    private final SingleFlight<String, EncodedSummary> refreshes = new SingleFlight<String, EncodedSummary>();
+    private final ConcurrentMap<String, Broadcast> broadcasts = new ConcurrentHashMap<String, Broadcast>();
+
+    /**
+     * Service querying the real providers, with default pool sizes and deadline.
+     * Provider requests are hedged only if the kilo.hedging system property is true.
+     */
+    public SummaryService() {
+        this(new LookupEngine(
+                        Executors.newFixedThreadPool(LookupEngine.DEFAULT_THREADS, new DaemonThreadFactory("lookup")),
+                        Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("lookup-deadline")),
+                        LookupEngine.DEFAULT_DEADLINE_MILLIS, new CircuitBreakers(),
+                        Boolean.getBoolean("kilo.hedging") ? new Hedging() : null),
+                PROVIDERS,
+                Executors.newFixedThreadPool(DEFAULT_SUMMARY_THREADS, new DaemonThreadFactory("summary")),
+                newCache(),
+                openStore(SummaryStore.DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * @param engine Runs the Lookups
+     * @param lookups Chooses the Lookups for each barcode
+     * @param summaryExecutor Runs the summarizers
+     */
+    public SummaryService(LookupEngine engine, LookupFactory lookups, ExecutorService summaryExecutor) {
+        this(engine, lookups, summaryExecutor, newCache(), null);
+    }
+
+    /**
+     * @param engine Runs the Lookups
+     * @param lookups Chooses the Lookups for each barcode
+     * @param summaryExecutor Runs the summarizers
+     * @param cache Holds encoded summaries by key
+     * @param store Keeps summaries across restarts; may be null
+     */
+    public SummaryService(LookupEngine engine, LookupFactory lookups, ExecutorService summaryExecutor,
+                          TinyLfuCache<String, EncodedSummary> cache, SummaryStore store) {
+        this(engine, lookups, summaryExecutor, cache, store,
+                new AdmissionController(DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_QUEUED));
+    }
+
+    /**
+     * @param engine Runs the Lookups
+     * @param lookups Chooses the Lookups for each barcode
+     * @param summaryExecutor Runs the summarizers
+     * @param cache Holds encoded summaries by key
+     * @param store Keeps summaries across restarts; may be null
+     * @param admission Bounds the interactive lookups in progress
+     */
+    public SummaryService(LookupEngine engine, LookupFactory lookups, ExecutorService summaryExecutor,
+                          TinyLfuCache<String, EncodedSummary> cache, SummaryStore store,
+                          AdmissionController admission) {
+        this(engine, new LookupEngine(
+                        Executors.newFixedThreadPool(DEFAULT_REFRESH_THREADS,
+                                new DaemonThreadFactory("refresh-lookup", Thread.MIN_PRIORITY)),
+                        Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("refresh-deadline")),
+                        engine.getDeadlineMillis(), engine.getBreakers(), null),
+                lookups, summaryExecutor,
+                Executors.newFixedThreadPool(DEFAULT_REFRESH_THREADS,
+                        new DaemonThreadFactory("refresh-summary", Thread.MIN_PRIORITY)),
+                DEFAULT_REFRESH_THREADS, cache, store, admission);
+    }
+
+    /**
+     * @param engine Runs the Lookups of interactive requests
+     * @param refreshEngine Runs the Lookups of background refreshes
+     * @param lookups Chooses the Lookups for each barcode
+     * @param summaryExecutor Runs the summarizers of interactive requests
+     * @param refreshExecutor Runs the summarizers of background refreshes
+     * @param maxRefreshes Most refreshes running at once; stale hits beyond this are served without one
+     * @param cache Holds encoded summaries by key
+     * @param store Keeps summaries across restarts; may be null
+     * @param admission Bounds the interactive lookups in progress
+     */
+    public SummaryService(LookupEngine engine, LookupEngine refreshEngine, LookupFactory lookups,
+                          ExecutorService summaryExecutor, ExecutorService refreshExecutor, int maxRefreshes,
+                          TinyLfuCache<String, EncodedSummary> cache, SummaryStore store,
+                          AdmissionController admission) {
+        this.engine = engine;
+        this.refreshEngine = refreshEngine;
+        this.lookups = lookups;
+        this.summaryExecutor = summaryExecutor;
+        this.refreshExecutor = refreshExecutor;
+        this.maxRefreshes = maxRefreshes;
+        this.cache = cache;
+        this.store = store;
+        this.admission = admission;
+    }
+
+    private static TinyLfuCache<String, EncodedSummary> newCache() {
+        return new TinyLfuCache<String, EncodedSummary>(DEFAULT_CACHE_BYTES, DEFAULT_CACHE_ENTRIES,
+                DEFAULT_CACHE_REFRESH_MILLIS, DEFAULT_CACHE_TTL_MILLIS, EncodedSummary::getWeight);
+    }
+
+    /**
+     * Opens the persistent store; shutdown closes it
+     *
+     * @param dir Directory of the store
+     * @return The store, or null if it cannot be opened
+     */
+    private static SummaryStore openStore(File dir) {
+        try {
+            SummaryStore store = SummaryStore.open(dir, SummaryStore.DEFAULT_MAX_AGE_MILLIS);
+            System.out.println("Opened summary store in " + dir + " with " + store.size() + " items");
+            return store;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Running without a persistent summary store");
+            return null;
+        }
+    }
+
+    /**
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @return A future holding the item information gathered before the lookup deadline,
+     * or no information at all if the barcode is invalid
+     */
+    public CompletableFuture<ItemInfo> populateItemInfo(String barcodeNo, String barcodeType) {
+        if (!Barcode.isValid(barcodeNo))
+            return CompletableFuture.completedFuture(new ItemInfo());
+        return populateItemInfo(engine, Barcode.parse(barcodeNo));
+    }
+
+    private CompletableFuture<ItemInfo> populateItemInfo(LookupEngine engine, Barcode barcode) {
+        return populateItemInfo(engine, barcode, new ItemInfo());
+    }
+
+    private CompletableFuture<ItemInfo> populateItemInfo(LookupEngine engine, Barcode barcode, ItemInfo info) {
+        return engine.submit(info, lookups.create(barcode.getNumber(), barcode.getType(), info));
+    }
+
+    /**
+     * Answers from the in-memory cache or the persistent store when possible; otherwise concurrent requests
+     * for the same item share one lookup and summarization, whose result is kept if any provider recognised
+     * the item. Barcodes that every provider answered without recognising are remembered for a shorter time,
+     * and answered with NOT_FOUND without querying the providers or MEAD again.
+     * A stale cached summary is returned at once and refreshed in the background.
+     * Invalid barcodes are answered with INVALID_BARCODE straight away.
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @return A future holding the summarized item, ready to send
+     */
+    public CompletableFuture<EncodedSummary> summarize(String barcodeNo, String barcodeType) {
+        Barcode barcode;
+        try {
+            barcode = Barcode.parse(barcodeNo);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return CompletableFuture.completedFuture(INVALID_BARCODE);
+        }
+        return summarize(barcode);
+    }
+
+    /**
+     * @param barcode A validated barcode
+     * @return A future holding the summarized item, ready to send
+     * @see #summarize(String, String)
+     */
+    public CompletableFuture<EncodedSummary> summarize(final Barcode barcode) {
+        final String key = barcode.toString();
+
+        EncodedSummary cached = cache.get(key);
+        if (cached != null) {
+            if (cache.isStale(key))
+                refresh(key, barcode);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        EncodedSummary unknown = negativeCache.get(key);
+        if (unknown != null)
+            return CompletableFuture.completedFuture(unknown);
+
+        EncodedSummary stored = load(key);
+        if (stored != null) {
+            cache.put(key, stored);
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        return flights.execute(key, () -> {
+            // Registered before admission, so that callers queued behind it can follow the lookup too
+            final Broadcast broadcast = new Broadcast();
+            broadcasts.put(key, broadcast);
+            CompletableFuture<EncodedSummary> flight = admission.acquire().thenCompose(permit -> {
+                CompletableFuture<EncodedSummary> result;
+                try {
+                    result = compute(key, barcode, engine, summaryExecutor, broadcast, permit.isDegraded());
+                } catch (RuntimeException e) {
+                    permit.release();
+                    throw e;
+                }
+                // Released before the caller hears of the result, so that its next request finds the permit free
+                return result.whenComplete((encoded, t) -> permit.release());
+            });
+            return flight.whenComplete((encoded, t) -> broadcasts.remove(key, broadcast));
+        });
+    }
+
+    /**
+     * Same as summarize, but also reports partial summaries while the item is looked up.
+     * Nothing is reported for items answered from the caches or the store, which are complete already.
+     *
+     * @param barcodeNo The item's barcode number
+     * @param barcodeType The type reported by the scanner; the canonical type is inferred from the digits
+     * @param progress Receives partial summaries, starting with the latest one if the lookup is under way
+     * @return A future holding the summarized item, ready to send
+     */
+    public CompletableFuture<EncodedSummary> summarize(String barcodeNo, String barcodeType, Progress progress) {
+        CompletableFuture<EncodedSummary> result = summarize(barcodeNo, barcodeType);
+        if (!result.isDone() && Barcode.isValid(barcodeNo)) {
+            Broadcast broadcast = broadcasts.get(Barcode.parse(barcodeNo).toString());
+            if (broadcast != null) broadcast.subscribe(progress);
+        }
+        return result;
+    }
+
+    /**
+     * Summarizes many items for one caller, each as summarize would. Different spellings of the same barcode
+     * are summarized once, and at most parallelism items are in progress at a time, so that one large batch
+     * cannot take over the lookup and summary pools from interactive scans.
+     *
+     * @param barcodeNos The items' barcode numbers; the types are inferred from the digits
+     * @param parallelism Most items summarized at once
+     * @return A future holding the summaries in the order first requested, keyed by canonical barcode;
+     * invalid barcodes are keyed as given and answered with INVALID_BARCODE, failed lookups with LOOKUP_FAILED
+     */
+    public CompletableFuture<Map<String, EncodedSummary>> summarizeAll(List<String> barcodeNos, int parallelism) {
+        final Map<String, EncodedSummary> results = new ConcurrentHashMap<String, EncodedSummary>();
+        final Set<String> order = new LinkedHashSet<String>();
+        final Queue<Barcode> pending = new ConcurrentLinkedQueue<Barcode>();
+        for (String barcodeNo : barcodeNos) {
+            if (!Barcode.isValid(barcodeNo)) {
+                if (order.add(barcodeNo)) results.put(barcodeNo, INVALID_BARCODE);
+                continue;
+            }
+            Barcode barcode = Barcode.parse(barcodeNo);
+            if (order.add(barcode.toString())) pending.add(barcode);
+        }
+
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        AtomicInteger remaining = new AtomicInteger(pending.size());
+        if (pending.isEmpty()) done.complete(null);
+        for (int i = 0; i < parallelism; i++)
+            summarizeNext(pending, results, remaining, done);
+
+        return done.thenApply(ignored -> {
+            Map<String, EncodedSummary> ordered = new LinkedHashMap<String, EncodedSummary>();
+            for (String key : order)
+                ordered.put(key, results.get(key));
+            return ordered;
+        });
+    }
+
+    /**
+     * Starts the next pending item of a batch, and the one after it when that finishes
+     */
+    private void summarizeNext(final Queue<Barcode> pending, final Map<String, EncodedSummary> results,
+                               final AtomicInteger remaining, final CompletableFuture<Void> done) {
+        final Barcode barcode = pending.poll();
+        if (barcode == null) return;
+        summarize(barcode).whenComplete((summary, t) -> {
+            if (t != null) {
+                t.printStackTrace();
+                summary = LOOKUP_FAILED;
+            }
+            results.put(barcode.toString(), summary);
+            if (remaining.decrementAndGet() == 0)
+                done.complete(null);
+            else
+                summarizeNext(pending, results, remaining, done);
+        });
+    }
+
+    /**
+     * Recomputes a stale summary on the refresh pools, unless it is already being refreshed or too many
+     * refreshes are running. The stale summary stays cached unless the refresh recognises the item.
+     */
+    private void refresh(final String key, final Barcode barcode) {
+        if (refreshes.getInFlight() >= maxRefreshes) return;
+        refreshes.execute(key, () -> compute(key, barcode, refreshEngine, refreshExecutor, null, false))
+                .whenComplete((encoded, t) -> {
+                    if (t != null) t.printStackTrace();
+                });
+    }
+
+    /**
+     * Looks an item up, summarizes it and keeps the result if any provider recognised it.
+     * Interactive lookups broadcast their progress to callers of summarize with a Progress; refreshes have no
+     * broadcast.
+     * Degraded lookups skip the reviews, and partial ones miss a provider whose breaker was open or which missed
+     * the deadline; their result is served but not kept, so that the next request does better.
+     */
+    private CompletableFuture<EncodedSummary> compute(final String key, Barcode barcode,
+                                                      LookupEngine engine, ExecutorService executor,
+                                                      final Broadcast broadcast, final boolean degraded) {
+        ItemInfo item = new ItemInfo();
+        if (broadcast != null) {
+            item.addListener((info, field) -> {
+                if ((field == ItemInfo.Field.TITLE || field == ItemInfo.Field.AUTHORS) && info.getTitle() != null)
+                    broadcast.partial(new Summary(info.getTitle(), info.getAuthors(), Collections.<String>emptyList()));
+            });
+        }
+
+        return populateItemInfo(engine, barcode, item)
+                .thenApplyAsync(info -> {
+                    if (info.isEmpty() && !info.isPartial()) {
+                        negativeCache.put(key, NOT_FOUND);
+                        return NOT_FOUND;
+                    }
+                    EncodedSummary encoded = degraded
+                            ? EncodedSummary.of(new Summary(info, summarizeDescriptions(info), REVIEWS_DEFERRED))
+                            : EncodedSummary.of(generateSummary(info, broadcast == null ? NO_PROGRESS : broadcast));
+                    if (encoded.getSummary().getTitle() != null && !degraded && !info.isPartial()) {
+                        cache.put(key, encoded);
+                        save(key, encoded);
+                    }
+                    return encoded;
+                }, executor);
+    }
+
+    /**
+     * Forwards the partial summaries of one lookup to everyone following it, replaying the latest to late
+     * subscribers
+     */
+    private static class Broadcast implements Progress {
+        private final List<Progress> subscribers = new CopyOnWriteArrayList<Progress>();
+        private Summary latest;
+
+        synchronized void subscribe(Progress progress) {
+            subscribers.add(progress);
+            if (latest != null) progress.partial(latest);
+        }
+
+        @Override
+        public synchronized void partial(Summary summary) {
+            latest = summary;
+            for (Progress subscriber : subscribers)
+                subscriber.partial(summary);
+        }
+    }
+
+    private EncodedSummary load(String key) {
+        if (store == null) return null;
+        try {
+            byte[] payload = store.get(key);
+            return payload == null ? null : EncodedSummary.fromSerialized(payload);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void save(String key, EncodedSummary encoded) {
+        if (store == null) return;
+        try {
+            store.put(key, encoded.toSerialized());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return Encoded summaries, keyed by canonical barcode, e.g. ISBN:9780201616224
+     */
+    public TinyLfuCache<String, EncodedSummary> getCache() {
+        return cache;
+    }
+
+    /**
+     * @return Barcodes no provider recognised, by key
+     */
+    public TinyLfuCache<String, EncodedSummary> getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * @return The providers' circuit breakers, shared by interactive lookups and refreshes
+     */
+    public CircuitBreakers getBreakers() {
+        return engine.getBreakers();
+    }
+
+    /**
+     * @return Response times and hedge counts of the providers of interactive lookups; refreshes are never
+     * hedged. Null if hedging is off.
+     */
+    public Hedging getHedging() {
+        return engine.getHedging();
+    }
+
+    /**
+     * @return Bounds the interactive lookups in progress
+     */
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    /**
+     * @return Requests coalesced into one lookup
+     */
+    public SingleFlight<String, EncodedSummary> getFlights() {
+        return flights;
+    }
+
+    /**
+     * @return Background refreshes of stale summaries
+     */
+    public SingleFlight<String, EncodedSummary> getRefreshes() {
+        return refreshes;
+    }
+
+    /**
+     * Given an ItemInfo, initialise two Summarizer objects, one for descriptions and one for reviews.
+     * In case of MEAD failure or other errors, the full text is returned.
+     *
+     * @param info A populated ItemInfo
+     * @return A Summary object holding summarized text
+     */
+    public Summary generateSummary(ItemInfo info) {
+        return generateSummary(info, NO_PROGRESS);
+    }
+
+    /**
+     * Same as generateSummary, reporting the description summary before the reviews are summarized
+     */
+    private Summary generateSummary(ItemInfo info, Progress progress) {
+        String summarizedDescriptions = summarizeDescriptions(info);
+        progress.partial(new Summary(info, summarizedDescriptions, ""));
+        return new Summary(info, summarizedDescriptions, summarizeReviews(info));
+    }
+
+    /**
+     * @param info A populated ItemInfo
+     * @return The descriptions summarized by MEAD, the first description if MEAD fails, or a placeholder
+     */
+    public String summarizeDescriptions(ItemInfo info) {
+        String summarizedDescriptions;
+        try {
+            MEADSummarizer descriptionSummarizer = new MEADSummarizer(info.getDescriptions(), 5);
+            if (! descriptionSummarizer.isEmpty()) {
+                summarizedDescriptions = descriptionSummarizer.getSummary();
+                System.out.println("Description summarization successful");
+            } else {
+                summarizedDescriptions = firstOr(info.getDescriptions(), NO_DESCRIPTION);
+                System.out.println("Empty description summary");
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            summarizedDescriptions = firstOr(info.getDescriptions(), NO_DESCRIPTION);
+        }
+
+        System.out.println("SUMMARISED DESCRIPTIONS");
+        System.out.println(summarizedDescriptions);
+        System.out.println("ORIGINAL DESCRIPTIONS");
+        ppList(info.getDescriptions());
+        return summarizedDescriptions;
+    }
+
+    /**
+     * @param info A populated ItemInfo
+     * @return The reviews summarized by MEAD, the first review if MEAD fails, or a placeholder
+     */
+    public String summarizeReviews(ItemInfo info) {
+        String summarizedReviews;
+        try {
+            MEADSummarizer reviewSummarizer = new MEADSummarizer(info.getReviews(), 5);
+            if (! reviewSummarizer.isEmpty()) {
+                summarizedReviews = reviewSummarizer.getSummary();
+                System.out.println("Review summarization successful");
+            } else {
+                summarizedReviews = firstOr(info.getReviews(), NO_REVIEWS);
+                System.out.println("Empty reviews summary");
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            summarizedReviews = firstOr(info.getReviews(), NO_REVIEWS);
+        }
+
+        System.out.println("SUMMARISED REVIEWS");
+        System.out.println(summarizedReviews);
+        System.out.println("ORIGINAL REVIEWS");
+        ppList(info.getReviews());
+        return summarizedReviews;
+    }
+
+    private static String firstOr(Vector<String> texts, String placeholder) {
+        try {
+            return texts.firstElement();
+        } catch (NoSuchElementException nsee) {
+            return placeholder;
+        }
+    }
+
+    /**
+     * Simple pretty print for lists
+     *
+     * @param l A List
+     */
+    public static void ppList(List<String> l) {
+        Iterator itr = l.iterator();
+        int i = 0;
+        while (itr.hasNext()) {
+            System.out.printf("[%d]\n%s\n", ++i, itr.next());
+        }
+    }
+
+    /**
+     * Stops the lookup and summarizer pools and closes the persistent store, releasing its lock
+     */
+    public void shutdown() {
+        engine.shutdown();
+        refreshEngine.shutdown();
+        summaryExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts warming the summary cache as soon as the webapp is deployed, and stops the shared service when it
+ * is undeployed, so that a redeployed webapp can open the persistent store again
+ *
+ * @author groupKilo
+ */
+public class WarmupListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        RESTBarcode.startWarmup();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        RESTBarcode.shutdown();
+    }
+}
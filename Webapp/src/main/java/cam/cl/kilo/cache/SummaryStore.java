@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.cache;
+
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable key/value store for encoded summaries, so that a redeployed webapp starts warm.
+ * <p>
+ * Values are appended to a log file; each record carries a CRC, and on startup the log is truncated
+ * after the last intact record. A memory-mapped open-addressing table maps key hashes to record offsets.
+ * The table is marked dirty while the store is open and rebuilt from the log if it was not closed cleanly.
+ * Records superseded by newer values for the same key are dropped by compaction, which rewrites the live
+ * records into a new log and renames it over the old one.
+ * Writes return once the record is in the log; forcing it to disk and compaction happen on a background
+ * thread, so that callers completing a summary do not wait for them. A crash may lose the last records,
+ * which recovery then drops.
+ * A lock file keeps two webapp instances from writing to the same directory.
+ * </p>
+ *
+ * @author groupKilo
+ */
+public class SummaryStore implements Closeable {
+
+    /**
+     * Location of the store, overridable with the kilo.store.dir system property
+     */
+    public static final File DEFAULT_DIRECTORY = new File(System.getProperty("kilo.store.dir",
+            new File(System.getProperty("java.io.tmpdir"), "projectkilo-summaries").getPath()));
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final String LOG_FILE = "summaries.log";
+    private static final String INDEX_FILE = "summaries.idx";
+    private static final String LOCK_FILE = "summaries.lock";
+
+    private static final int INDEX_MAGIC = 0x4b494c4f;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 4096;
+
+    // record: int length, int crc, long writtenAt, short keyLength, key, payload
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 2;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private final File dir;
+    private final long maxAgeMillis;
+    // Forces the log and compacts it, off the threads calling put
+    private final ExecutorService maintenance =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("summary-store"));
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel log;
+    private RandomAccessFile indexFile;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private long logLength;
+    private long garbage;
+    private boolean syncPending;
+    private boolean compactionPending;
+    private boolean closed;
+
+    private SummaryStore(File dir, long maxAgeMillis) {
+        this.dir = dir;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Opens or creates a store, recovering from an unclean shutdown if needed
+     *
+     * @param dir Directory holding the log and index
+     * @param maxAgeMillis Age after which stored values are no longer returned
+     * @return The opened store
+     * @throws IOException If the files cannot be created or read
+     */
+    public static SummaryStore open(File dir, long maxAgeMillis) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create " + dir);
+        SummaryStore store = new SummaryStore(dir, maxAgeMillis);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(dir + " is in use by another summary store");
+        }
+
+        log = new RandomAccessFile(new File(dir, LOG_FILE), "rw").getChannel();
+        logLength = recover();
+
+        indexFile = new RandomAccessFile(new File(dir, INDEX_FILE), "rw");
+        boolean clean = false;
+        if (indexFile.length() >= HEADER_SIZE) {
+            indexFile.seek(8);
+            int storedCapacity = indexFile.readInt();
+            if (storedCapacity > 0 && indexFile.length() == HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+                map(storedCapacity);
+                clean = index.getInt(0) == INDEX_MAGIC && index.getInt(4) == INDEX_VERSION
+                        && index.getInt(16) == 1 && index.getLong(20) == logLength;
+            }
+        }
+        if (clean) {
+            count = index.getInt(12);
+            garbage = measureGarbage();
+        } else {
+            System.out.println("Summary store index missing or stale, rebuilding from log");
+            rebuildIndex(INITIAL_CAPACITY);
+        }
+        setClean(false);
+    }
+
+    /**
+     * @param key The key
+     * @return The most recent value stored for key, or null if none or if it is too old
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int slot = findSlot(keyBytes);
+        long offset = index.getLong(slotPosition(slot) + 8) - 1;
+        if (offset < 0) return null;
+
+        Record record = readRecord(offset);
+        if (record == null || System.currentTimeMillis() - record.writtenAt > maxAgeMillis)
+            return null;
+        return record.payload;
+    }
+
+    /**
+     * Appends a value and points the index at it
+     *
+     * @param key The key
+     * @param payload The encoded value
+     * @throws IOException If the log cannot be written
+     */
+    public synchronized void put(String key, byte[] payload) throws IOException {
+        if (closed) throw new IOException("Summary store in " + dir + " is closed");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long offset = logLength;
+        ByteBuffer record = encode(keyBytes, payload, System.currentTimeMillis());
+        int size = record.remaining();
+        while (record.hasRemaining())
+            log.write(record, offset + (size - record.remaining()));
+        logLength += size;
+        if (!syncPending) {
+            syncPending = true;
+            maintenance.execute(this::sync);
+        }
+
+        int slot = findSlot(keyBytes);
+        int position = slotPosition(slot);
+        long previous = index.getLong(position + 8) - 1;
+        if (previous >= 0) {
+            garbage += recordSize(previous);
+        } else {
+            count++;
+        }
+        index.putLong(position, hash(keyBytes));
+        index.putLong(position + 8, offset + 1);
+        index.putInt(12, count);
+        index.putLong(20, logLength);
+
+        if (count * 10 > capacity * 7)
+            rebuildIndex(capacity * 2);
+        if (!compactionPending && logLength > COMPACTION_THRESHOLD && garbage * 2 > logLength) {
+            compactionPending = true;
+            maintenance.execute(this::compactInBackground);
+        }
+    }
+
+    /**
+     * Forces the records written since the last sync to disk, without holding up put and get meanwhile
+     */
+    private void sync() {
+        FileChannel channel;
+        synchronized (this) {
+            syncPending = false;
+            if (closed) return;
+            channel = log;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Replaced by compaction, which forced the new log
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void compactInBackground() {
+        compactionPending = false;
+        if (closed) return;
+        try {
+            compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites the log keeping only the latest record for each key, and dropping those too old to be returned
+     *
+     * @throws IOException If the new log cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        File compacted = new File(dir, LOG_FILE + ".compact");
+        FileChannel out = new RandomAccessFile(compacted, "rw").getChannel();
+        try {
+            out.truncate(0);
+            long position = 0;
+            long now = System.currentTimeMillis();
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = index.getLong(slotPosition(slot) + 8) - 1;
+                if (offset < 0) continue;
+                Record record = readRecord(offset);
+                if (record == null || now - record.writtenAt > maxAgeMillis) continue;
+                ByteBuffer buffer = encode(record.key, record.payload, record.writtenAt);
+                while (buffer.hasRemaining())
+                    position += out.write(buffer, position);
+            }
+            out.force(true);
+        } finally {
+            out.close();
+        }
+
+        log.close();
+        Files.move(compacted.toPath(), new File(dir, LOG_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = new RandomAccessFile(new File(dir, LOG_FILE), "rw").getChannel();
+        logLength = log.size();
+        rebuildIndex(capacity);
+        System.out.println("Compacted summary store to " + logLength + " bytes");
+    }
+
+    /**
+     * @return The latest value of every key, whatever its age
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<byte[]> values() throws IOException {
+        List<byte[]> values = new ArrayList<byte[]>(count);
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = index.getLong(slotPosition(slot) + 8) - 1;
+            if (offset < 0) continue;
+            Record record = readRecord(offset);
+            if (record != null) values.add(record.payload);
+        }
+        return values;
+    }
+
+    /**
+     * @return Number of distinct keys stored
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return Size of the log in bytes, including superseded records
+     */
+    public synchronized long getLogLength() {
+        return logLength;
+    }
+
+    /**
+     * Waits for a running compaction, then flushes the index and marks it clean, so that the next open does
+     * not rebuild it
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            log.force(true);
+            setClean(true);
+            log.close();
+            indexFile.close();
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * Scans the log and truncates it after the last intact record
+     *
+     * @return Length of the valid part of the log
+     */
+    private long recover() throws IOException {
+        long size = log.size();
+        long offset = 0;
+        while (offset < size) {
+            int length = recordSize(offset);
+            if (length <= 0 || offset + length > size || readRecord(offset) == null)
+                break;
+            offset += length;
+        }
+        if (offset < size) {
+            System.out.println("Truncating summary store log from " + size + " to " + offset + " bytes");
+            log.truncate(offset);
+            log.force(true);
+        }
+        return offset;
+    }
+
+    /**
+     * Replays the log into a new table of at least newCapacity slots, larger if the log holds too many records
+     * for it, so that replaying after a crash never fills the table
+     */
+    private void rebuildIndex(int newCapacity) throws IOException {
+        int records = 0;
+        long offset = 0;
+        while (offset < logLength) {
+            int length = recordSize(offset);
+            if (length <= 0) break;
+            records++;
+            offset += length;
+        }
+        while (records * 10L > newCapacity * 7L)
+            newCapacity *= 2;
+
+        map(newCapacity);
+        for (int position = HEADER_SIZE; position < HEADER_SIZE + newCapacity * SLOT_SIZE; position += 8)
+            index.putLong(position, 0);
+        count = 0;
+        garbage = 0;
+
+        offset = 0;
+        while (offset < logLength) {
+            int length = recordSize(offset);
+            Record record = readRecord(offset);
+            if (record != null) {
+                int position = slotPosition(findSlot(record.key));
+                long previous = index.getLong(position + 8) - 1;
+                if (previous >= 0) garbage += recordSize(previous);
+                else count++;
+                index.putLong(position, hash(record.key));
+                index.putLong(position + 8, offset + 1);
+            }
+            offset += length;
+        }
+
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, count);
+        index.putLong(20, logLength);
+        index.force();
+    }
+
+    private long measureGarbage() throws IOException {
+        long live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long offset = index.getLong(slotPosition(slot) + 8) - 1;
+            if (offset >= 0) live += recordSize(offset);
+        }
+        return logLength - live;
+    }
+
+    private void map(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        indexFile.setLength(size);
+        index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void setClean(boolean clean) {
+        index.putInt(16, clean ? 1 : 0);
+        index.force();
+    }
+
+    /**
+     * Linear probing: returns the slot holding key, or the empty slot where it would go
+     */
+    private int findSlot(byte[] key) throws IOException {
+        long hash = hash(key);
+        int slot = (int) ((hash ^ (hash >>> 32)) & 0x7fffffff) % capacity;
+        for (int probes = 0; probes < capacity; probes++) {
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + 8) - 1;
+            if (offset < 0) return slot;
+            if (index.getLong(position) == hash) {
+                Record record = readRecord(offset);
+                if (record != null && Arrays.equals(record.key, key)) return slot;
+            }
+            slot = (slot + 1) % capacity;
+        }
+        throw new IOException("Summary store index in " + dir + " is full");
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int recordSize(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (length.hasRemaining()) {
+            if (log.read(length, offset + length.position()) < 0) return -1;
+        }
+        int size = length.getInt(0);
+        return (size <= 0 || size > MAX_RECORD_SIZE) ? -1 : size + 4;
+    }
+
+    /**
+     * @return The record at offset, or null if it is truncated or its CRC does not match
+     */
+    private Record readRecord(long offset) throws IOException {
+        int size = recordSize(offset);
+        if (size < RECORD_HEADER_SIZE || offset + size > log.size()) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, offset + buffer.position()) < 0) return null;
+        }
+        buffer.flip();
+        buffer.getInt();
+        int crc = buffer.getInt();
+
+        CRC32 check = new CRC32();
+        check.update(buffer.array(), 8, size - 8);
+        if ((int) check.getValue() != crc) return null;
+
+        long writtenAt = buffer.getLong();
+        int keyLength = buffer.getShort() & 0xffff;
+        if (keyLength > buffer.remaining()) return null;
+        byte[] key = new byte[keyLength];
+        buffer.get(key);
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return new Record(key, payload, writtenAt);
+    }
+
+    private static ByteBuffer encode(byte[] key, byte[] payload, long writtenAt) {
+        int size = RECORD_HEADER_SIZE + key.length + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size - 4);
+        buffer.putInt(0);
+        buffer.putLong(writtenAt);
+        buffer.putShort((short) key.length);
+        buffer.put(key);
+        buffer.put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, size - 8);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 64-bit FNV-1a, never 0
+     */
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private static class Record {
+        final byte[] key;
+        final byte[] payload;
+        final long writtenAt;
+
+        Record(byte[] key, byte[] payload, long writtenAt) {
+            this.key = key;
+            this.payload = payload;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache using W-TinyLFU eviction.
+ * New entries go into a small LRU window; when they leave it they must beat the oldest entry of the main
+ * segmented LRU on estimated access frequency to be admitted, so one-off scans cannot flush popular items.
+ * Size is measured in weight (e.g. bytes) rather than entries, and every entry expires after its TTL.
+ * Entries can also go stale before they expire: they are still returned, but isStale tells the caller
+ * that it is time to recompute them in the background.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ * @author groupKilo
+ */
+public class TinyLfuCache<K, V> {
+
+    /**
+     * Measures how much of the cache's capacity a value uses
+     */
+    public interface Weigher<V> {
+        int weigh(V value);
+    }
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED }
+
+    private static class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        final long refreshAt;
+        final long expiresAt;
+        Segment segment;
+
+        Node(K key, V value, int weight, long refreshAt, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long defaultRefreshMillis;
+    private final long defaultTtlMillis;
+    private final Weigher<? super V> weigher;
+    private final LongSupplier clock;
+    private final FrequencySketch sketch;
+
+    private final Map<K, Node<K, V>> data = new HashMap<K, Node<K, V>>();
+    private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<K, Node<K, V>>();
+    private final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<K, Node<K, V>>();
+    private final LinkedHashMap<K, Node<K, V>> protectedSegment = new LinkedHashMap<K, Node<K, V>>();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param maximumWeight Capacity, in the unit of the weigher
+     * @param expectedEntries Rough number of entries held when full, used to size the frequency sketch
+     * @param defaultTtlMillis Lifetime of entries put without an explicit TTL
+     * @param weigher Measures each value
+     */
+    public TinyLfuCache(long maximumWeight, int expectedEntries, long defaultTtlMillis, Weigher<? super V> weigher) {
+        this(maximumWeight, expectedEntries, defaultTtlMillis, defaultTtlMillis, weigher, System::nanoTime);
+    }
+
+    /**
+     * @param maximumWeight Capacity, in the unit of the weigher
+     * @param expectedEntries Rough number of entries held when full, used to size the frequency sketch
+     * @param defaultRefreshMillis Time after which entries put without an explicit TTL go stale
+     * @param defaultTtlMillis Lifetime of entries put without an explicit TTL
+     * @param weigher Measures each value
+     */
+    public TinyLfuCache(long maximumWeight, int expectedEntries, long defaultRefreshMillis, long defaultTtlMillis,
+                        Weigher<? super V> weigher) {
+        this(maximumWeight, expectedEntries, defaultRefreshMillis, defaultTtlMillis, weigher, System::nanoTime);
+    }
+
+    TinyLfuCache(long maximumWeight, int expectedEntries, long defaultTtlMillis, Weigher<? super V> weigher,
+                 LongSupplier clock) {
+        this(maximumWeight, expectedEntries, defaultTtlMillis, defaultTtlMillis, weigher, clock);
+    }
+
+    TinyLfuCache(long maximumWeight, int expectedEntries, long defaultRefreshMillis, long defaultTtlMillis,
+                 Weigher<? super V> weigher, LongSupplier clock) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_SHARE));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_SHARE);
+        this.defaultRefreshMillis = defaultRefreshMillis;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.weigher = weigher;
+        this.clock = clock;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * @param key The key to look up
+     * @return The cached value, or null if absent or expired
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        if (node.expiresAt - clock.getAsLong() <= 0) {
+            unlink(node);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    /**
+     * @param key The key to look up
+     * @return Whether the key holds a live entry that is past its refresh time
+     */
+    public synchronized boolean isStale(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) return false;
+        long now = clock.getAsLong();
+        return node.refreshAt - now <= 0 && node.expiresAt - now > 0;
+    }
+
+    /**
+     * Caches a value for the default refresh time and TTL
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(K key, V value) {
+        put(key, value, defaultRefreshMillis, defaultTtlMillis);
+    }
+
+    /**
+     * Caches a value that does not go stale before it expires
+     *
+     * @param key The key
+     * @param value The value
+     * @param ttlMillis Time after which the entry expires
+     */
+    public void put(K key, V value, long ttlMillis) {
+        put(key, value, ttlMillis, ttlMillis);
+    }
+
+    /**
+     * Caches a value, replacing any previous one. Values heavier than the whole cache are not kept.
+     *
+     * @param key The key
+     * @param value The value
+     * @param refreshMillis Time after which the entry is stale
+     * @param ttlMillis Time after which the entry expires
+     */
+    public void put(K key, V value, long refreshMillis, long ttlMillis) {
+        int weight = weigher.weigh(value);
+        long now = clock.getAsLong();
+        Node<K, V> node = new Node<K, V>(key, value, weight,
+                now + TimeUnit.MILLISECONDS.toNanos(refreshMillis), now + TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        synchronized (this) {
+            Node<K, V> old = data.get(key);
+            if (old != null) unlink(old);
+            if (weight > maximumWeight) return;
+
+            sketch.increment(key);
+            data.put(key, node);
+            link(window, node, Segment.WINDOW);
+            evict();
+        }
+    }
+
+    /**
+     * @param key The key to drop
+     */
+    public synchronized void invalidate(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) unlink(node);
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node.key);
+                window.put(node.key, node);
+                break;
+            case PROBATION:
+                unlinkSegment(node);
+                link(protectedSegment, node, Segment.PROTECTED);
+                while (protectedWeight > protectedMaximum && protectedSegment.size() > 1) {
+                    Node<K, V> demoted = first(protectedSegment);
+                    unlinkSegment(demoted);
+                    link(probation, demoted, Segment.PROBATION);
+                }
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node.key);
+                protectedSegment.put(node.key, node);
+                break;
+        }
+    }
+
+    /**
+     * Moves entries out of the window, letting each one into the main segments only if it is
+     * accessed more often than whatever it would displace.
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum && !window.isEmpty()) {
+            Node<K, V> candidate = first(window);
+            unlinkSegment(candidate);
+            admit(candidate);
+        }
+        while (weightedSizeLocked() > maximumWeight) {
+            Node<K, V> victim = first(probation);
+            if (victim == null) victim = first(protectedSegment);
+            if (victim == null) victim = first(window);
+            unlink(victim);
+            evictions++;
+        }
+    }
+
+    private void admit(Node<K, V> candidate) {
+        while (weightedSizeLocked() + candidate.weight > maximumWeight) {
+            Node<K, V> victim = first(probation);
+            if (victim == null) victim = first(protectedSegment);
+            if (victim == null) break;
+
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                unlink(victim);
+                evictions++;
+            } else {
+                data.remove(candidate.key);
+                evictions++;
+                return;
+            }
+        }
+        link(probation, candidate, Segment.PROBATION);
+    }
+
+    private void link(LinkedHashMap<K, Node<K, V>> segment, Node<K, V> node, Segment name) {
+        node.segment = name;
+        segment.put(node.key, node);
+        switch (name) {
+            case WINDOW: windowWeight += node.weight; break;
+            case PROBATION: probationWeight += node.weight; break;
+            case PROTECTED: protectedWeight += node.weight; break;
+        }
+    }
+
+    private void unlinkSegment(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node.key);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node.key);
+                protectedWeight -= node.weight;
+                break;
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        unlinkSegment(node);
+        data.remove(node.key);
+    }
+
+    private Node<K, V> first(LinkedHashMap<K, Node<K, V>> segment) {
+        Iterator<Node<K, V>> it = segment.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private long weightedSizeLocked() {
+        return windowWeight + probationWeight + protectedWeight;
+    }
+
+    /**
+     * @return Number of entries
+     */
+    public synchronized int size() {
+        return data.size();
+    }
+
+    /**
+     * @return Total weight of the entries
+     */
+    public synchronized long weightedSize() {
+        return weightedSizeLocked();
+    }
+
+    /**
+     * @return Lookups that found a live entry
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return Lookups that found nothing, or an expired entry
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return Entries dropped, or refused admission, to stay within capacity
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return Entries dropped because their TTL had passed
+     */
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d/%d weight, %d hits, %d misses, %d evictions, %d expirations",
+                data.size(), weightedSizeLocked(), maximumWeight, hits, misses, evictions, expirations);
+    }
+}
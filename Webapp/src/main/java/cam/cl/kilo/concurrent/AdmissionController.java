@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds the work in progress so that a slow dependency makes requests fail fast instead of piling up.
+ * Up to a fixed number of callers hold a permit at once; further callers wait in a bounded queue, and once
+ * that is full they are rejected straight away. Nobody blocks: a permit is handed over through a future.
+ * Permits that had to wait are marked degraded, telling the holder to do only the essential part of its
+ * work so that the queue drains quickly.
+ *
+ * @author groupKilo
+ */
+public class AdmissionController {
+
+    /**
+     * The right to run one piece of work; must be released exactly once when the work is done
+     */
+    public final class Permit {
+        private final boolean degraded;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(boolean degraded) {
+            this.degraded = degraded;
+        }
+
+        /**
+         * @return Whether the permit was only granted after queueing
+         */
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        /**
+         * Hands the permit to the next caller in the queue, if any; further calls do nothing
+         */
+        public void release() {
+            if (released.compareAndSet(false, true))
+                AdmissionController.this.release();
+        }
+    }
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Queue<CompletableFuture<Permit>> queue = new ArrayDeque<CompletableFuture<Permit>>();
+    private int inFlight;
+    private long admitted;
+    private long queued;
+    private long rejected;
+    private long degraded;
+
+    /**
+     * @param maxInFlight Most permits held at once
+     * @param maxQueued Most callers waiting for a permit
+     */
+    public AdmissionController(int maxInFlight, int maxQueued) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * @return A future holding a permit, at once if one is free or later if the caller had to queue;
+     * it fails with RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<Permit> acquire() {
+        synchronized (this) {
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                admitted++;
+                return CompletableFuture.completedFuture(new Permit(false));
+            }
+            if (queue.size() < maxQueued) {
+                CompletableFuture<Permit> waiter = new CompletableFuture<Permit>();
+                queue.add(waiter);
+                queued++;
+                return waiter;
+            }
+            rejected++;
+        }
+        CompletableFuture<Permit> rejection = new CompletableFuture<Permit>();
+        rejection.completeExceptionally(new RejectedExecutionException("Overloaded"));
+        return rejection;
+    }
+
+    private void release() {
+        CompletableFuture<Permit> next;
+        synchronized (this) {
+            next = queue.poll();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+            admitted++;
+            degraded++;
+        }
+        // Outside the lock, as completing runs the waiter's work on this thread
+        next.complete(new Permit(true));
+    }
+
+    /**
+     * @param t A failure, possibly wrapped by CompletableFuture
+     * @return Whether it was caused by a rejection
+     */
+    public static boolean isRejection(Throwable t) {
+        for (; t != null; t = t.getCause())
+            if (t instanceof RejectedExecutionException) return true;
+        return false;
+    }
+
+    /**
+     * @return Permits currently held
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return Callers currently waiting for a permit
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Permits granted
+     */
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * @return Callers that had to queue
+     */
+    public synchronized long getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return Callers rejected because the queue was full
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return Degraded permits granted
+     */
+    public synchronized long getDegraded() {
+        return degraded;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a dependency that keeps failing, so that requests skip it at once instead of waiting for it
+ * to time out.
+ * The breaker starts closed and opens after a number of consecutive failures; calls slower than the latency
+ * objective count as failures. While open, calls are refused. Once the open period has passed, a single
+ * probe call is let through (half-open): if it succeeds the breaker closes, otherwise it opens again.
+ * Every change of state is logged and passed to the listeners.
+ *
+ * @author groupKilo
+ */
+public class CircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 5000;
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Told about every change of state
+     */
+    public interface Listener {
+        void transition(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongSupplier clock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long rejected;
+    private long opened;
+
+    /**
+     * @param name The dependency, for logging
+     */
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_FAILURE_THRESHOLD, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * @param name The dependency, for logging
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param slowCallMillis Calls taking longer than this count as failures
+     * @param openMillis How long calls are refused before a probe is let through
+     */
+    public CircuitBreaker(String name, int failureThreshold, long slowCallMillis, long openMillis) {
+        this(name, failureThreshold, slowCallMillis, openMillis, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long slowCallMillis, long openMillis, LongSupplier clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @param listener Told about every later change of state
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return Whether a call may be made now; if so, its outcome must be reported with onSuccess or onFailure.
+     * A probe whose outcome is never reported is replaced by another one after the open period.
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            if (state == State.CLOSED) return true;
+            if (clock.getAsLong() - openedAt < openNanos) {
+                rejected++;
+                return false;
+            }
+            openedAt = clock.getAsLong();
+            if (state == State.HALF_OPEN) return true;
+            from = moveTo(State.HALF_OPEN);
+        }
+        notify(from, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * @param elapsedNanos How long the call took; a call slower than the objective counts as a failure
+     */
+    public void onSuccess(long elapsedNanos) {
+        if (elapsedNanos > slowCallNanos) {
+            onFailure();
+            return;
+        }
+        State from;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state != State.HALF_OPEN) return;
+            from = moveTo(State.CLOSED);
+        }
+        notify(from, State.CLOSED);
+    }
+
+    /**
+     * Reports a failed call
+     */
+    public void onFailure() {
+        State from;
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.OPEN) return;
+            if (state == State.CLOSED && consecutiveFailures < failureThreshold) return;
+            openedAt = clock.getAsLong();
+            opened++;
+            from = moveTo(State.OPEN);
+        }
+        notify(from, State.OPEN);
+    }
+
+    private State moveTo(State to) {
+        State from = state;
+        state = to;
+        return from;
+    }
+
+    private void notify(State from, State to) {
+        System.out.println("Circuit breaker " + name + ": " + from + " -> " + to);
+        for (Listener listener : listeners)
+            listener.transition(this, from, to);
+    }
+
+    /**
+     * @return The dependency's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The current state; an open breaker whose open period has passed still reports OPEN until probed
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Calls refused while open or while a probe was running
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return Number of times the breaker opened
+     */
+    public synchronized long getOpened() {
+        return opened;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * One CircuitBreaker per dependency, created with the default settings the first time it is asked for
+ *
+ * @author groupKilo
+ */
+public class CircuitBreakers {
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentSkipListMap<String, CircuitBreaker>();
+
+    /**
+     * @param name The dependency
+     * @return Its breaker
+     */
+    public CircuitBreaker get(String name) {
+        CircuitBreaker breaker = breakers.get(name);
+        if (breaker != null) return breaker;
+        CircuitBreaker created = new CircuitBreaker(name);
+        breaker = breakers.putIfAbsent(name, created);
+        return breaker != null ? breaker : created;
+    }
+
+    /**
+     * @param breaker A breaker to use for its dependency from now on, e.g. one with custom settings
+     */
+    public void put(CircuitBreaker breaker) {
+        breakers.put(breaker.getName(), breaker);
+    }
+
+    /**
+     * @return Every breaker created so far, by name
+     */
+    public Collection<CircuitBreaker> all() {
+        return new ArrayList<CircuitBreaker>(breakers.values());
+    }
+}
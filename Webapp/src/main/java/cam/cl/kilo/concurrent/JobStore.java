@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bounded store of background jobs, so that a client can start a slow computation, go away, and collect the
+ * result later under the job's id. Submitting a key that already has a live job returns that job, so the
+ * work is done once however often the client reconnects; only a job that failed is started afresh.
+ * Finished jobs are kept for a fixed time and then forgotten, oldest first if the store fills up; running
+ * jobs are never evicted, and new submissions are refused while the store is full of them.
+ *
+ * @param <K> Key type, e.g. a canonical barcode
+ * @param <V> Result type
+ * @author groupKilo
+ */
+public class JobStore<K, V> {
+
+    /**
+     * A submitted computation and its result
+     */
+    public static final class Job<K, V> {
+        private final String id;
+        private final K key;
+        private final CompletableFuture<V> result;
+        private volatile long completedAt;
+        private volatile boolean completed;
+
+        Job(String id, K key, CompletableFuture<V> result) {
+            this.id = id;
+            this.key = key;
+            this.result = result;
+        }
+
+        /**
+         * @return Unguessable id under which the job can be fetched
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return The key the job was submitted for
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * @return Future completing with the job's result
+         */
+        public CompletableFuture<V> getResult() {
+            return result;
+        }
+    }
+
+    private final int maximumJobs;
+    private final long retainNanos;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Job<K, V>> jobs = new LinkedHashMap<String, Job<K, V>>();
+    private final Map<K, Job<K, V>> byKey = new HashMap<K, Job<K, V>>();
+    private long rejected;
+
+    /**
+     * @param maximumJobs Most jobs held, running or finished
+     * @param retainMillis How long a finished job's result is kept
+     */
+    public JobStore(int maximumJobs, long retainMillis) {
+        this(maximumJobs, retainMillis, System::nanoTime);
+    }
+
+    JobStore(int maximumJobs, long retainMillis, LongSupplier clock) {
+        this.maximumJobs = maximumJobs;
+        this.retainNanos = TimeUnit.MILLISECONDS.toNanos(retainMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @param key Identifies the work
+     * @param work Starts the work; only called if key has no live job, and outside the store's lock, so that
+     *             polls are not held up while it starts
+     * @return The new or existing job, or null if the store is full of running jobs
+     */
+    public Job<K, V> submit(K key, Supplier<CompletableFuture<V>> work) {
+        final Job<K, V> job;
+        synchronized (this) {
+            Job<K, V> existing = byKey.get(key);
+            if (existing != null && !isExpired(existing) && !existing.result.isCompletedExceptionally())
+                return existing;
+
+            purge();
+            if (jobs.size() >= maximumJobs) {
+                rejected++;
+                return null;
+            }
+
+            // Reserves the slot, so that submissions of the same key meanwhile share the job
+            job = new Job<K, V>(UUID.randomUUID().toString(), key, new CompletableFuture<V>());
+            jobs.put(job.id, job);
+            byKey.put(key, job);
+        }
+        job.result.whenComplete((v, t) -> {
+            job.completedAt = clock.getAsLong();
+            job.completed = true;
+        });
+
+        try {
+            work.get().whenComplete((v, t) -> {
+                if (t != null) job.result.completeExceptionally(t);
+                else job.result.complete(v);
+            });
+        } catch (RuntimeException e) {
+            job.result.completeExceptionally(e);
+        }
+        return job;
+    }
+
+    /**
+     * @param id A job's id
+     * @return The job, or null if it is unknown or its result has been forgotten
+     */
+    public synchronized Job<K, V> get(String id) {
+        Job<K, V> job = jobs.get(id);
+        if (job == null || isExpired(job)) return null;
+        return job;
+    }
+
+    /**
+     * Forgets finished jobs older than the retention time, and then the oldest finished jobs while full
+     */
+    private void purge() {
+        boolean full = jobs.size() >= maximumJobs;
+        for (Iterator<Job<K, V>> it = jobs.values().iterator(); it.hasNext(); ) {
+            Job<K, V> job = it.next();
+            if (!job.completed) continue;
+            if (isExpired(job) || full) {
+                it.remove();
+                byKey.remove(job.key, job);
+                full = jobs.size() >= maximumJobs;
+            }
+        }
+    }
+
+    private boolean isExpired(Job<K, V> job) {
+        return job.completed && clock.getAsLong() - job.completedAt > retainNanos;
+    }
+
+    /**
+     * @return Number of jobs held, running or finished
+     */
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    /**
+     * @return Number of submissions refused because the store was full
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key: while one is in flight, further callers
+ * for that key are handed its future instead of starting their own.
+ * Nothing is remembered once the computation completes; caching is left to the callers.
+ *
+ * @param <K> Key type
+ * @param <V> Result type
+ * @author groupKilo
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param key Identifies the computation
+     * @param loader Starts the computation; only called if none is in flight for key
+     * @return A future shared by all callers that asked for key while it was running
+     */
+    public CompletableFuture<V> execute(final K key, Supplier<CompletableFuture<V>> loader) {
+        final CompletableFuture<V> flight = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        started.incrementAndGet();
+
+        CompletableFuture<V> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            return flight;
+        }
+
+        loaded.whenComplete((v, t) -> {
+            // Remove first, so that callers woken by the result start a fresh computation if they need one
+            inFlight.remove(key, flight);
+            if (t != null) flight.completeExceptionally(t);
+            else flight.complete(v);
+        });
+        return flight;
+    }
+
+    /**
+     * @return Number of keys currently being computed
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return Number of computations started
+     */
+    public long getStarted() {
+        return started.get();
+    }
+
+    /**
+     * @return Number of callers that joined a computation already in flight
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
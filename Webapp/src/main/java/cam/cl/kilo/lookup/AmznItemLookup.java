@@ -17,14 +17,16 @@
 package cam.cl.kilo.lookup;
 
 import cam.cl.kilo.NLP.ItemInfo;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -44,32 +46,57 @@ public class AmznItemLookup extends Lookup {
 
     public void fillContent(String requestURL) {
         try {
-        	// Parse XML response DOM. 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(requestURL);
-
-            // Required DOM nodes.
-            Node descriptionNode = doc.getElementsByTagName("Content").item(0);
-            Node reviewURLNode = doc.getElementsByTagName("IFrameURL").item(0);
-            Node titleNode = doc.getElementsByTagName("Title").item(0);
-            Node itemAttrNode = doc.getElementsByTagName("ItemAttributes").item(0);
-            
-            // Populate ItemInfo object.
-            for (Node child = itemAttrNode.getFirstChild(); child != null; child = child.getNextSibling())
-                if (child.getNodeName().equalsIgnoreCase("Author"))
-                    info.addAuthor(child.getTextContent());
-            info.setTitle(titleNode.getTextContent());
-            info.addDescription(descriptionNode.getTextContent());
+            readItem(new ByteArrayInputStream(request(requestURL)));
 
             System.out.println("AMAZON DESCRIPTION FETCHED:");
             System.out.println(info.getDescriptions().lastElement());
             
         } catch (Exception e) {
-            e.printStackTrace();
+            failed(e);
         }
     }
 
+    /**
+     * Fills in the ItemInfo from an ItemLookup response: the authors listed in the item's attributes,
+     * its title and its first editorial review as the description.
+     * Reading stops as soon as all three have been found.
+     *
+     * @param in The response
+     * @throws XMLStreamException If the response is malformed or lacks one of them
+     */
+    public void readItem(InputStream in) throws XMLStreamException {
+        List<String> authors = null;
+        String title = null;
+        String description = null;
+
+        XMLStreamReader xml = XmlStreams.open(in);
+        try {
+            while ((authors == null || title == null || description == null) && xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+                String name = xml.getLocalName();
+                if (name.equals("ItemAttributes") && authors == null) {
+                    // The title is one of the item's attributes
+                    Map<String, List<String>> attributes = XmlStreams.readChildren(xml);
+                    authors = attributes.containsKey("Author") ? attributes.get("Author")
+                            : Collections.<String>emptyList();
+                    if (title == null && attributes.containsKey("Title"))
+                        title = attributes.get("Title").get(0);
+                } else if (name.equals("Title") && title == null) {
+                    title = XmlStreams.readText(xml);
+                } else if (name.equals("Content") && description == null) {
+                    description = XmlStreams.readText(xml);
+                }
+            }
+        } finally {
+            xml.close();
+        }
+
+        for (String author : XmlStreams.require(authors, "ItemAttributes"))
+            info.addAuthor(author);
+        info.setTitle(XmlStreams.require(title, "Title"));
+        info.addDescription(XmlStreams.require(description, "Content"));
+    }
+
 	@Override
 	public void run() {
 		
@@ -117,4 +144,9 @@ public class AmznItemLookup extends Lookup {
 		
 	}
 
-}
\ No newline at end of file
+	@Override
+	public boolean isHedged() {
+		return true;
+	}
+
+}
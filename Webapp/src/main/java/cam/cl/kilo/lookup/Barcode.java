@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.lookup;
+
+/**
+ * A validated barcode in canonical form, so that every way of writing the same item maps to one number.
+ * Separators are stripped and check digits verified; ISBN-10s become ISBN-13s, and the type is inferred
+ * from the digits rather than trusted from the scanner:
+ * <ul>
+ *     <li>ISBN: 13 digits with a 978 or 979 (Bookland) prefix</li>
+ *     <li>UPC: 12 digits, including EAN-13s starting with 0</li>
+ *     <li>EAN: any other 13 or 8 digits</li>
+ * </ul>
+ * These are also the IdType values Amazon's ItemLookup expects.
+ *
+ * @author groupKilo
+ */
+public final class Barcode {
+
+    public static final String ISBN = "ISBN";
+    public static final String UPC = "UPC";
+    public static final String EAN = "EAN";
+
+    private final String number;
+    private final String type;
+
+    private Barcode(String number, String type) {
+        this.number = number;
+        this.type = type;
+    }
+
+    /**
+     * @param barcodeNo A scanned or typed barcode, possibly with spaces or dashes
+     * @return The canonical barcode
+     * @throws IllegalArgumentException If it is not a well-formed ISBN, EAN or UPC with a correct check digit
+     */
+    public static Barcode parse(String barcodeNo) {
+        if (barcodeNo == null)
+            throw new IllegalArgumentException("Missing barcode");
+        String code = barcodeNo.replaceAll("[\\s-]", "").toUpperCase();
+
+        if (code.matches("\\d{9}[\\dX]")) {
+            if (isbn10CheckDigit(code.substring(0, 9)) != code.charAt(9))
+                throw new IllegalArgumentException("Bad ISBN-10 check digit: " + barcodeNo);
+            String isbn13 = "978" + code.substring(0, 9);
+            return new Barcode(isbn13 + checkDigit(isbn13), ISBN);
+        }
+
+        if (!code.matches("\\d{8}|\\d{12}|\\d{13}"))
+            throw new IllegalArgumentException("Not an ISBN, EAN or UPC: " + barcodeNo);
+        int last = code.length() - 1;
+        if (checkDigit(code.substring(0, last)) != code.charAt(last))
+            throw new IllegalArgumentException("Bad check digit: " + barcodeNo);
+
+        if (code.length() == 13 && (code.startsWith("978") || code.startsWith("979")))
+            return new Barcode(code, ISBN);
+        if (code.length() == 13 && code.charAt(0) == '0')
+            return new Barcode(code.substring(1), UPC);
+        if (code.length() == 12)
+            return new Barcode(code, UPC);
+        return new Barcode(code, EAN);
+    }
+
+    /**
+     * @param barcodeNo A scanned or typed barcode
+     * @return Whether parse accepts it
+     */
+    public static boolean isValid(String barcodeNo) {
+        try {
+            parse(barcodeNo);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check digit shared by EAN-8, UPC-A, EAN-13 and ISBN-13: digits are weighted 3 and 1 alternately
+     * from the right.
+     *
+     * @param digits The barcode without its check digit
+     * @return The check digit
+     */
+    public static char checkDigit(String digits) {
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int weight = (digits.length() - i) % 2 == 1 ? 3 : 1;
+            sum += weight * (digits.charAt(i) - '0');
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    private static char isbn10CheckDigit(String digits) {
+        int sum = 0;
+        for (int i = 0; i < 9; i++)
+            sum += (10 - i) * (digits.charAt(i) - '0');
+        int check = (11 - sum % 11) % 11;
+        return check == 10 ? 'X' : (char) ('0' + check);
+    }
+
+    /**
+     * @return The digits, without separators
+     */
+    public String getNumber() {
+        return number;
+    }
+
+    /**
+     * @return ISBN, UPC or EAN
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Whether this is a book
+     */
+    public boolean isBook() {
+        return ISBN.equals(type);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Barcode)) return false;
+        Barcode other = (Barcode) o;
+        return number.equals(other.number) && type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return number.hashCode();
+    }
+
+    /**
+     * @return Type and number, e.g. ISBN:9780201616224; used as the cache key
+     */
+    @Override
+    public String toString() {
+        return type + ":" + number;
+    }
+}
@@ -18,12 +18,17 @@ package cam.cl.kilo.lookup;
 
 import cam.cl.kilo.NLP.ItemInfo;
 import cam.cl.kilo.parsing.Parser;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import cam.cl.kilo.parsing.ReviewBudget;
+import cam.cl.kilo.parsing.ReviewWidget;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Main class of GoodReads Lookup
@@ -58,32 +63,60 @@ public class GoodReadsLookup extends Lookup {
 	 */
 	public void fillContent(String requestURL) {
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(requestURL);
-
-			Node descriptionNode = doc.getElementsByTagName("description")
-					.item(0);
-			Node reviewURLNode = doc.getElementsByTagName("IFrameURL").item(0);
-			Node titleNode = doc.getElementsByTagName("title").item(0);
-			Node itemAttrNode = doc.getElementsByTagName("author").item(0);
-			Node reviewsBlock = doc.getElementsByTagName("reviews_widget").item(0);
-
-			for (Node child = itemAttrNode.getFirstChild(); child != null; child = child
-					.getNextSibling())
-				if (child.getNodeName().equalsIgnoreCase("name"))
-					info.addAuthor(child.getTextContent());
-
-			info.setTitle(titleNode.getTextContent());
-			info.addDescription(descriptionNode.getTextContent());
+			String reviewsBlock = readBook(new ByteArrayInputStream(request(requestURL)));
             System.out.println("GOODREADS DESCRIPTION FETCHED:");
             System.out.println(info.getDescriptions().lastElement());
 
-			Parser.parse(extract(reviewsBlock.getTextContent()), "link[itemprop=\"url\"][href]", "div[class=\"reviewText mediumText description\"]", info);
+			Parser.parseWidget(extract(reviewsBlock), ReviewWidget.GOODREADS, ReviewBudget.DEFAULT, info);
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			failed(e);
+		}
+	}
+
+	/**
+	 * Fills in the ItemInfo with the book's title, the names of its first
+	 * author entry and its description, from a book response.
+	 * Reading stops once these and the reviews widget have been found,
+	 * which skips the similar books that make up most of the response.
+	 *
+	 * @param  in  the response
+	 * @return  the text of the reviews widget, which holds its link
+	 * @throws XMLStreamException  if the response is malformed or lacks one of them
+	 */
+	public String readBook(InputStream in) throws XMLStreamException {
+		List<String> authors = null;
+		String title = null;
+		String description = null;
+		String reviewsBlock = null;
+
+		XMLStreamReader xml = XmlStreams.open(in);
+		try {
+			while ((authors == null || title == null || description == null || reviewsBlock == null)
+					&& xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+				String name = xml.getLocalName();
+				if (name.equals("author") && authors == null) {
+					Map<String, List<String>> fields = XmlStreams.readChildren(xml);
+					authors = fields.containsKey("name") ? fields.get("name")
+							: Collections.<String>emptyList();
+				} else if (name.equals("title") && title == null) {
+					title = XmlStreams.readText(xml);
+				} else if (name.equals("description") && description == null) {
+					description = XmlStreams.readText(xml);
+				} else if (name.equals("reviews_widget") && reviewsBlock == null) {
+					reviewsBlock = XmlStreams.readText(xml);
+				}
+			}
+		} finally {
+			xml.close();
 		}
+
+		for (String author : XmlStreams.require(authors, "author"))
+			info.addAuthor(author);
+		info.setTitle(XmlStreams.require(title, "title"));
+		info.addDescription(XmlStreams.require(description, "description"));
+		return XmlStreams.require(reviewsBlock, "reviews_widget");
 	}
 
 	/**
@@ -116,4 +149,9 @@ public class GoodReadsLookup extends Lookup {
 
 	}
 
+	@Override
+	public boolean isHedged() {
+		return true;
+	}
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.lookup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when HttpFetcher sends a second, hedge request for a slow provider's API call.
+ * Each provider's recent response times are kept, and a request still running at their 95th percentile is
+ * hedged. Hedges are paid for from a budget that every request adds a small fraction to, so that they never
+ * exceed that fraction of the traffic, even when a provider slows down altogether.
+ *
+ * @author groupKilo
+ */
+public class Hedging {
+
+    public static final double DEFAULT_BUDGET = 0.05;
+    public static final int DEFAULT_WINDOW = 256;
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    public static final double PERCENTILE = 0.95;
+
+    /**
+     * Most hedges that can be saved up while providers are fast
+     */
+    private static final double MAX_TOKENS = 10;
+
+    /**
+     * Recent response times and hedge counts of one provider
+     */
+    private static class Provider {
+        final long[] samples;
+        int count;
+        int next;
+        final AtomicLong hedges = new AtomicLong();
+        final AtomicLong wins = new AtomicLong();
+
+        Provider(int window) {
+            samples = new long[window];
+        }
+    }
+
+    private final double budget;
+    private final int window;
+    private final int minSamples;
+    private final ConcurrentMap<String, Provider> providers = new ConcurrentSkipListMap<String, Provider>();
+    private double tokens;
+
+    public Hedging() {
+        this(DEFAULT_BUDGET, DEFAULT_WINDOW, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * @param budget Largest share of requests that may be hedged, e.g. 0.05
+     * @param window Number of recent response times kept per provider
+     * @param minSamples Response times needed before a provider is hedged
+     */
+    public Hedging(double budget, int window, int minSamples) {
+        this.budget = budget;
+        this.window = window;
+        this.minSamples = minSamples;
+    }
+
+    private Provider provider(String name) {
+        Provider provider = providers.get(name);
+        if (provider != null) return provider;
+        Provider created = new Provider(window);
+        provider = providers.putIfAbsent(name, created);
+        return provider != null ? provider : created;
+    }
+
+    /**
+     * Adds a request to the budget
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    /**
+     * @param name The provider
+     * @param elapsedNanos How long one of its requests took to answer
+     */
+    public void record(String name, long elapsedNanos) {
+        Provider provider = provider(name);
+        synchronized (provider) {
+            provider.samples[provider.next] = elapsedNanos;
+            provider.next = (provider.next + 1) % provider.samples.length;
+            provider.count = Math.min(provider.count + 1, provider.samples.length);
+        }
+    }
+
+    /**
+     * @param name The provider
+     * @return How long to wait for its answer before hedging, or -1 until enough response times are known
+     */
+    public long getDelayNanos(String name) {
+        Provider provider = provider(name);
+        long[] sorted;
+        synchronized (provider) {
+            if (provider.count < minSamples) return -1;
+            sorted = Arrays.copyOf(provider.samples, provider.count);
+        }
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(PERCENTILE * sorted.length) - 1];
+    }
+
+    /**
+     * @param name The provider to hedge
+     * @return Whether the budget allows a hedge now; if so, it is counted
+     */
+    public boolean tryHedge(String name) {
+        synchronized (this) {
+            if (tokens < 1) return false;
+            tokens -= 1;
+        }
+        provider(name).hedges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param name The provider whose hedge answered before the original request
+     */
+    public void onHedgeWon(String name) {
+        provider(name).wins.incrementAndGet();
+    }
+
+    /**
+     * @return The providers seen so far
+     */
+    public List<String> getProviders() {
+        return new ArrayList<String>(providers.keySet());
+    }
+
+    /**
+     * @param name The provider
+     * @return Hedges sent to it
+     */
+    public long getHedges(String name) {
+        return provider(name).hedges.get();
+    }
+
+    /**
+     * @param name The provider
+     * @return Hedges that answered before the original request
+     */
+    public long getWins(String name) {
+        return provider(name).wins.get();
+    }
+
+    /**
+     * @param name The provider
+     * @return Its current hedging delay in milliseconds, or -1 if it is not hedged yet
+     */
+    public long getDelayMillis(String name) {
+        long nanos = getDelayNanos(name);
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
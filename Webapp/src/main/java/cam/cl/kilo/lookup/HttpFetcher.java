@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.lookup;
+
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.jsoup.Jsoup;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP client shared by every Lookup and by the review Parser, so that requests to a provider reuse
+ * kept-alive connections from a per-host pool instead of opening a new one each time.
+ * Every request has connect and read timeouts, and waits a bounded time for a pooled connection, so a
+ * stalled provider ties up a lookup thread for seconds rather than indefinitely.
+ * Requests, failures and bytes received are counted per host.
+ * A provider's API request can be hedged: if it has not answered by the time Hedging chooses, the same
+ * request is sent again, the first answer is kept and the other request aborted.
+ * The shared instance is configured with the kilo.http.* system properties.
+ *
+ * @author groupKilo
+ */
+public class HttpFetcher implements Closeable {
+
+    public static final int DEFAULT_MAX_PER_HOST = 16;
+    public static final int DEFAULT_MAX_TOTAL = 64;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 3000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    private static final HttpFetcher SHARED = new HttpFetcher(
+            Integer.getInteger("kilo.http.maxPerHost", DEFAULT_MAX_PER_HOST),
+            Integer.getInteger("kilo.http.maxTotal", DEFAULT_MAX_TOTAL),
+            Integer.getInteger("kilo.http.connectTimeout", DEFAULT_CONNECT_TIMEOUT_MILLIS),
+            Integer.getInteger("kilo.http.readTimeout", DEFAULT_READ_TIMEOUT_MILLIS));
+
+    private final PoolingHttpClientConnectionManager pool;
+    private final CloseableHttpClient client;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentSkipListMap<String, Host>();
+    // Hedges are few, as Hedging keeps them to a small share of the requests
+    private final ExecutorService hedges = Executors.newCachedThreadPool(new DaemonThreadFactory("http-hedge"));
+    private final ScheduledExecutorService hedgeTimer =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("http-hedge-timer"));
+
+    /**
+     * @param maxPerHost Most connections open to one host
+     * @param maxTotal Most connections open altogether
+     * @param connectTimeoutMillis Longest wait to connect, and for a pooled connection to become free
+     * @param readTimeoutMillis Longest wait for the next bytes of a response
+     */
+    public HttpFetcher(int maxPerHost, int maxTotal, int connectTimeoutMillis, int readTimeoutMillis) {
+        pool = new PoolingHttpClientConnectionManager();
+        pool.setDefaultMaxPerRoute(maxPerHost);
+        pool.setMaxTotal(maxTotal);
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+        client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(config)
+                .setUserAgent("ProjectKilo")
+                .build();
+    }
+
+    /**
+     * @return The instance used by the providers
+     */
+    public static HttpFetcher getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @param url The resource to fetch
+     * @return The response body
+     * @throws FileNotFoundException If the server answers 404 or 410, so that Lookup.failed does not count
+     *         an unknown item against the provider's circuit breaker
+     * @throws IOException If the request fails, times out or gets any other non-200 status
+     */
+    public byte[] get(String url) throws IOException {
+        return fetch(new HttpGet(url)).body;
+    }
+
+    /**
+     * Fetches a provider's API response, hedging the request if it is slow
+     *
+     * @param url The resource to fetch
+     * @param hedging Decides when to hedge and records the response times; null to never hedge
+     * @param provider The provider whose response times the request counts towards
+     * @return The response body of whichever request answered first
+     * @throws IOException As for get, once neither request can answer
+     */
+    public byte[] get(String url, Hedging hedging, String provider) throws IOException {
+        if (hedging == null) return get(url);
+        return new HedgedGet(url, hedging, provider).run();
+    }
+
+    /**
+     * @param url An HTML page
+     * @return The parsed page, with url as its base URI so that relative links resolve
+     * @throws IOException As for get
+     */
+    public org.jsoup.nodes.Document getHtml(String url) throws IOException {
+        return getHtml(new HttpGet(url));
+    }
+
+    /**
+     * Fetches a page with a request that another thread may abort, e.g. once the page is no longer needed
+     *
+     * @param request A GET request for an HTML page
+     * @return The parsed page, with the request URI as its base URI
+     * @throws IOException As for get, including when the request is aborted
+     */
+    public org.jsoup.nodes.Document getHtml(HttpGet request) throws IOException {
+        Fetched fetched = fetch(request);
+        String charset = fetched.charset != null ? fetched.charset.name() : null;
+        return Jsoup.parse(new ByteArrayInputStream(fetched.body), charset, request.getURI().toString());
+    }
+
+    private Fetched fetch(HttpGet request) throws IOException {
+        String url = request.getURI().toString();
+        Host host = host(request.getURI());
+        host.requests.incrementAndGet();
+        try {
+            CloseableHttpResponse response = client.execute(request);
+            try {
+                int status = response.getStatusLine().getStatusCode();
+                HttpEntity entity = response.getEntity();
+                // Reading the entity to its end is what returns the connection to the pool
+                byte[] body = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+                host.bytes.addAndGet(body.length);
+                if (status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE)
+                    throw new FileNotFoundException(status + " " + url);
+                if (status != HttpStatus.SC_OK)
+                    throw new IOException("Server returned HTTP " + status + " for " + url);
+                return new Fetched(body, entity != null ? ContentType.getOrDefault(entity).getCharset() : null);
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            host.failures.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            request.abort();
+            host.failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Host host(URI uri) {
+        String name = uri.getHost();
+        if (name == null) name = "unknown";
+        Host host = hosts.get(name);
+        if (host != null) return host;
+        Host created = new Host();
+        host = hosts.putIfAbsent(name, created);
+        return host != null ? host : created;
+    }
+
+    /**
+     * @return Every host requested so far, by name
+     */
+    public Set<String> getHosts() {
+        return hosts.keySet();
+    }
+
+    /**
+     * @param host A host from getHosts
+     * @return Requests sent to it
+     */
+    public long getRequests(String host) {
+        Host h = hosts.get(host);
+        return h != null ? h.requests.get() : 0;
+    }
+
+    /**
+     * @param host A host from getHosts
+     * @return Requests to it that failed or got an error status
+     */
+    public long getFailures(String host) {
+        Host h = hosts.get(host);
+        return h != null ? h.failures.get() : 0;
+    }
+
+    /**
+     * @param host A host from getHosts
+     * @return Response body bytes received from it, after any content decoding
+     */
+    public long getBytes(String host) {
+        Host h = hosts.get(host);
+        return h != null ? h.bytes.get() : 0;
+    }
+
+    /**
+     * @return Connections in use, idle in the pool, and requests waiting for one
+     */
+    public PoolStats getPoolStats() {
+        return pool.getTotalStats();
+    }
+
+    /**
+     * Closes every pooled connection; the shared instance only once the webapp is undeployed
+     */
+    @Override
+    public void close() throws IOException {
+        hedges.shutdownNow();
+        hedgeTimer.shutdownNow();
+        client.close();
+    }
+
+    /**
+     * One hedged request: the original on the calling thread, and a hedge on the hedging pool if the
+     * original is still running at the provider's hedging delay
+     */
+    private class HedgedGet {
+        private final String url;
+        private final Hedging hedging;
+        private final String provider;
+        private final CompletableFuture<byte[]> answer = new CompletableFuture<byte[]>();
+        // Guarded by this
+        private final List<HttpGet> attempts = new ArrayList<HttpGet>(2);
+        private int outstanding;
+
+        HedgedGet(String url, Hedging hedging, String provider) {
+            this.url = url;
+            this.hedging = hedging;
+            this.provider = provider;
+        }
+
+        /**
+         * The time recorded for the provider runs from the original request until the caller has its answer,
+         * whichever request gave it, or gave up on it: a hedge winning does not make the provider look fast,
+         * and failed and timed out requests count too.
+         */
+        byte[] run() throws IOException {
+            long start = System.nanoTime();
+            hedging.onRequest();
+            try {
+                HttpGet original = begin();
+                long delay = hedging.getDelayNanos(provider);
+                ScheduledFuture<?> hedge = delay < 0 ? null
+                        : hedgeTimer.schedule(this::hedge, delay, TimeUnit.NANOSECONDS);
+                attempt(original, false);
+                if (hedge != null) hedge.cancel(false);
+
+                // Only waits if the original failed while the hedge is still running
+                return answer.get();
+            } catch (InterruptedException e) {
+                abortAll();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + url);
+            } catch (ExecutionException e) {
+                throw (IOException) e.getCause();
+            } finally {
+                hedging.record(provider, System.nanoTime() - start);
+            }
+        }
+
+        private synchronized HttpGet begin() {
+            HttpGet request = new HttpGet(url);
+            attempts.add(request);
+            outstanding++;
+            return request;
+        }
+
+        private void hedge() {
+            final HttpGet request;
+            synchronized (this) {
+                if (answer.isDone() || !hedging.tryHedge(provider)) return;
+                request = begin();
+            }
+            System.out.println("Hedging " + provider + " request");
+            hedges.execute(() -> attempt(request, true));
+        }
+
+        private void attempt(HttpGet request, boolean isHedge) {
+            try {
+                byte[] body = fetch(request).body;
+                List<HttpGet> losers;
+                synchronized (this) {
+                    outstanding--;
+                    if (!answer.complete(body)) return;
+                    losers = new ArrayList<HttpGet>(attempts);
+                    losers.remove(request);
+                }
+                if (isHedge) hedging.onHedgeWon(provider);
+                // The loser's connection is closed rather than returned to the pool mid-response
+                for (HttpGet loser : losers)
+                    loser.abort();
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    outstanding--;
+                    // Leaves the answer to the other request while it is running; an aborted loser ends here too
+                    if (outstanding == 0)
+                        answer.completeExceptionally(e instanceof IOException ? e : new IOException(e));
+                }
+            }
+        }
+
+        private synchronized void abortAll() {
+            for (HttpGet request : attempts)
+                request.abort();
+        }
+    }
+
+    private static class Host {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+    }
+
+    private static class Fetched {
+        final byte[] body;
+        final Charset charset;
+
+        Fetched(byte[] body, Charset charset) {
+            this.body = body;
+            this.charset = charset;
+        }
+    }
+}
@@ -18,11 +18,19 @@ package cam.cl.kilo.lookup;
 
 import cam.cl.kilo.NLP.ItemInfo;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
 public abstract class Lookup implements Runnable {
 	
 	protected String barcodeNo = "";
 	protected String barcodeType = "";
 	protected ItemInfo info;
+	private volatile boolean unavailable;
+	private volatile Hedging hedging;
+	private volatile long requestNanos = -1;
 
 	public Lookup(String barcodeNo, String barcodeType, ItemInfo info) {
 
@@ -35,7 +43,94 @@ public abstract class Lookup implements Runnable {
 	}
 	
 	public abstract void run();
+
+	/**
+	 * Lookups which build their query from another provider's result declare it here;
+	 * the LookupEngine only starts them once all these fields are filled in.
+	 *
+	 * @return The ItemInfo fields this Lookup reads
+	 */
+	public Set<ItemInfo.Field> getRequiredFields() {
+		return EnumSet.noneOf(ItemInfo.Field.class);
+	}
 	
+	/**
+	 * Names the provider, e.g. for its circuit breaker; all Lookups of one class share it
+	 *
+	 * @return The provider's name
+	 */
+	public String getProvider() {
+		String name = getClass().getSimpleName();
+		return name.isEmpty() ? getClass().getName() : name;
+	}
+
+	/**
+	 * Reports an exception caught while querying the provider.
+	 * I/O errors other than a missing page mean the provider could not be reached and count against its
+	 * circuit breaker; anything else, such as a response without the expected elements, means that the
+	 * provider does not know the item.
+	 *
+	 * @param e The exception caught
+	 */
+	protected void failed(Exception e) {
+		e.printStackTrace();
+		if (e instanceof IOException && !(e instanceof FileNotFoundException))
+			unavailable = true;
+	}
+
+	/**
+	 * @return Whether the provider could not be reached
+	 */
+	public boolean isUnavailable() {
+		return unavailable;
+	}
+
+	/**
+	 * Providers whose API request may be sent twice, keeping the first answer, return true here.
+	 * Only the API request is hedged, never what the Lookup fetches after it, such as reviews.
+	 *
+	 * @return Whether request may hedge
+	 */
+	public boolean isHedged() {
+		return false;
+	}
+
+	/**
+	 * Set by the LookupEngine before running the Lookup
+	 *
+	 * @param hedging Decides when to hedge this provider's request, or null to never hedge
+	 */
+	void setHedging(Hedging hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * Fetches the provider's API response through the shared HttpFetcher, hedged if the provider allows it
+	 * and the LookupEngine hedges
+	 *
+	 * @param requestURL The API request
+	 * @return The response body
+	 * @throws IOException If the provider cannot be reached or answers with an error
+	 */
+	protected byte[] request(String requestURL) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return HttpFetcher.getShared().get(requestURL, isHedged() ? hedging : null, getProvider());
+		} finally {
+			requestNanos = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * The circuit breaker judges the provider by this rather than by the whole Lookup,
+	 * which may go on to fetch reviews from other sites.
+	 *
+	 * @return How long the API request took, or -1 if the Lookup has not made one through request
+	 */
+	public long getRequestNanos() {
+		return requestNanos;
+	}
+
 	protected abstract void fillContent(String requestURL);
 
 }
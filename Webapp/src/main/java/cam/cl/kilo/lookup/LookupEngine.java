@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.lookup;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.concurrent.CircuitBreaker;
+import cam.cl.kilo.concurrent.CircuitBreakers;
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the Lookups for one item concurrently on a shared thread pool.
+ * A Lookup that depends on fields found by another one is started as soon as they are published,
+ * so it overlaps with the providers that are still running.
+ * The returned future completes as soon as every Lookup has finished or the deadline has passed,
+ * whichever comes first; in the latter case it holds whatever the providers managed to fill in,
+ * and is marked partial, as it is when a Lookup failed.
+ * Each provider has a circuit breaker: a provider that keeps failing or answering too slowly is skipped,
+ * and the item marked partial, until a probe finds it working again.
+ * If the engine is given a Hedging, the API requests of providers that allow it are hedged: one that has not
+ * been answered by the provider's recent 95th percentile response time is sent again and the first answer
+ * kept, within the budget set by Hedging. Hedging is off unless configured.
+ *
+ * @author groupKilo
+ */
+public class LookupEngine {
+
+    public static final int DEFAULT_THREADS = 32;
+    public static final long DEFAULT_DEADLINE_MILLIS = 10000;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final long deadlineMillis;
+    private final CircuitBreakers breakers;
+    private final Hedging hedging;
+
+    /**
+     * @param threads Size of the pool shared by all requests
+     * @param deadlineMillis Time after which a request stops waiting for its providers
+     */
+    public LookupEngine(int threads, long deadlineMillis) {
+        this(Executors.newFixedThreadPool(threads, new DaemonThreadFactory("lookup")),
+                Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("lookup-deadline")),
+                deadlineMillis);
+    }
+
+    /**
+     * @param executor Runs the Lookups
+     * @param timer Fires the per-request deadline
+     * @param deadlineMillis Time after which a request stops waiting for its providers
+     */
+    public LookupEngine(ExecutorService executor, ScheduledExecutorService timer, long deadlineMillis) {
+        this(executor, timer, deadlineMillis, new CircuitBreakers());
+    }
+
+    /**
+     * @param executor Runs the Lookups
+     * @param timer Fires the per-request deadline
+     * @param deadlineMillis Time after which a request stops waiting for its providers
+     * @param breakers The providers' circuit breakers, by provider name; may be shared with other engines
+     */
+    public LookupEngine(ExecutorService executor, ScheduledExecutorService timer, long deadlineMillis,
+                        CircuitBreakers breakers) {
+        this(executor, timer, deadlineMillis, breakers, null);
+    }
+
+    /**
+     * @param executor Runs the Lookups
+     * @param timer Fires the per-request deadline
+     * @param deadlineMillis Time after which a request stops waiting for its providers
+     * @param breakers The providers' circuit breakers, by provider name; may be shared with other engines
+     * @param hedging Decides when to hedge; may be shared with other engines, or null to never hedge
+     */
+    public LookupEngine(ExecutorService executor, ScheduledExecutorService timer, long deadlineMillis,
+                        CircuitBreakers breakers, Hedging hedging) {
+        this.executor = executor;
+        this.timer = timer;
+        this.deadlineMillis = deadlineMillis;
+        this.breakers = breakers;
+        this.hedging = hedging;
+    }
+
+    /**
+     * Starts all Lookups without blocking the caller.
+     *
+     * @param info The ItemInfo the Lookups write to
+     * @param lookups The providers to query
+     * @return A future holding a snapshot of info once the Lookups are done or the deadline passes
+     */
+    public CompletableFuture<ItemInfo> submit(ItemInfo info, List<? extends Lookup> lookups) {
+        return new Run(info, lookups).start();
+    }
+
+    /**
+     * Runs all Lookups and waits for them, for at most the deadline.
+     *
+     * @param info The ItemInfo the Lookups write to
+     * @param lookups The providers to query
+     * @return A snapshot of info
+     */
+    public ItemInfo run(ItemInfo info, List<? extends Lookup> lookups) {
+        try {
+            return submit(info, lookups).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return info.snapshot();
+        } catch (ExecutionException ee) {
+            ee.printStackTrace();
+            return info.snapshot();
+        }
+    }
+
+    /**
+     * @return The deadline applied to each request, in milliseconds
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * @return The providers' circuit breakers
+     */
+    public CircuitBreakers getBreakers() {
+        return breakers;
+    }
+
+    /**
+     * @return Response times and hedge counts of the providers, or null if they are never hedged
+     */
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    /**
+     * Stops the pool; Lookups still running are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * State of the Lookups for a single item.
+     * Lookups with required fields wait in pending until another provider publishes those fields.
+     */
+    private class Run implements ItemInfo.Listener {
+
+        private final ItemInfo info;
+        private final CompletableFuture<ItemInfo> result = new CompletableFuture<ItemInfo>();
+        private final List<Lookup> pending;
+        private final List<Future<?>> tasks = new ArrayList<Future<?>>();
+        private int running;
+        private boolean failed;
+
+        Run(ItemInfo info, List<? extends Lookup> lookups) {
+            this.info = info;
+            this.pending = new ArrayList<Lookup>(lookups);
+        }
+
+        CompletableFuture<ItemInfo> start() {
+            final ScheduledFuture<?> deadline = timer.schedule(() -> {
+                ItemInfo snapshot = info.snapshot();
+                snapshot.setPartial(true);
+                if (result.complete(snapshot))
+                    System.out.println("Lookup deadline reached, returning partial item information");
+            }, deadlineMillis, TimeUnit.MILLISECONDS);
+
+            result.whenComplete((i, t) -> {
+                deadline.cancel(false);
+                info.removeListener(this);
+                synchronized (this) {
+                    for (Future<?> task : tasks)
+                        task.cancel(true);
+                }
+            });
+
+            info.addListener(this);
+            startReady();
+
+            return result;
+        }
+
+        @Override
+        public void published(ItemInfo info, ItemInfo.Field field) {
+            startReady();
+        }
+
+        /**
+         * Submits every pending Lookup whose inputs are available.
+         * Completes the run once nothing is running and nothing else can start.
+         */
+        private synchronized void startReady() {
+            if (result.isDone()) return;
+
+            for (Iterator<Lookup> it = pending.iterator(); it.hasNext(); ) {
+                Lookup lookup = it.next();
+                if (info.hasAll(lookup.getRequiredFields())) {
+                    it.remove();
+                    CircuitBreaker breaker = breakers.get(lookup.getProvider());
+                    if (!breaker.tryAcquire()) {
+                        System.out.println("Skipping " + lookup.getProvider() + ", its circuit breaker is open");
+                        failed = true;
+                        continue;
+                    }
+                    running++;
+                    lookup.setHedging(hedging);
+                    tasks.add(executor.submit(wrap(lookup, breaker)));
+                }
+            }
+
+            if (running == 0) {
+                ItemInfo snapshot = info.snapshot();
+                snapshot.setPartial(failed);
+                result.complete(snapshot);
+            }
+        }
+
+        private Runnable wrap(final Lookup lookup, final CircuitBreaker breaker) {
+            return () -> {
+                long start = System.nanoTime();
+                boolean available = false;
+                try {
+                    lookup.run();
+                    available = !lookup.isUnavailable();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (available) {
+                        // Only the provider's own API call counts towards a slow call, not the reviews fetched after it
+                        long elapsed = lookup.getRequestNanos();
+                        breaker.onSuccess(elapsed >= 0 ? elapsed : System.nanoTime() - start);
+                    } else {
+                        breaker.onFailure();
+                        synchronized (this) {
+                            failed = true;
+                        }
+                    }
+                    finished();
+                }
+            };
+        }
+
+        private void finished() {
+            synchronized (this) {
+                running--;
+            }
+            startReady();
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package cam.cl.kilo.lookup;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.EnumSet;
+import java.util.Set;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import cam.cl.kilo.NLP.ItemInfo;
 
@@ -46,31 +51,64 @@ public class OMDBLookup extends Lookup {
 	 */
 	public void fillContent(String requestURL) {
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(requestURL);
-			NodeList nodeList = doc.getElementsByTagName("movie");
-	
-	        for(int x=0,size= nodeList.getLength(); x<size; x++) {
-	        	title = nodeList.item(x).getAttributes().getNamedItem("title").getNodeValue();
-	            year = nodeList.item(x).getAttributes().getNamedItem("year").getNodeValue();
-	            genre = nodeList.item(x).getAttributes().getNamedItem("genre").getNodeValue();
-	            director = nodeList.item(x).getAttributes().getNamedItem("director").getNodeValue();
-	            actors = nodeList.item(x).getAttributes().getNamedItem("actors").getNodeValue();
-	            plot = nodeList.item(x).getAttributes().getNamedItem("plot").getNodeValue();
-	        }
-			info.setTitle(title);
-			info.addAuthor(director);
-			info.addAuthor(actors);
-			info.addDescription(plot);
+			readMovie(new ByteArrayInputStream(request(requestURL)));
 		} catch (Exception e) {
-			e.printStackTrace();
+			failed(e);
+		}
+	}
+
+	/**
+	 * Fills in the ItemInfo from the attributes of the movie element,
+	 * which is the only one a search by title returns; reading stops there
+	 *
+	 * @param  in  the response
+	 * @throws XMLStreamException  if the response is malformed, or the movie lacks an attribute
+	 */
+	public void readMovie(InputStream in) throws XMLStreamException {
+		XMLStreamReader xml = XmlStreams.open(in);
+		try {
+			while (xml.hasNext()) {
+				if (xml.next() != XMLStreamConstants.START_ELEMENT || !xml.getLocalName().equals("movie"))
+					continue;
+				title = attribute(xml, "title");
+				year = attribute(xml, "year");
+				genre = attribute(xml, "genre");
+				director = attribute(xml, "director");
+				actors = attribute(xml, "actors");
+				plot = attribute(xml, "plot");
+				break;
+			}
+		} finally {
+			xml.close();
 		}
+		info.setTitle(title);
+		info.addAuthor(director);
+		info.addAuthor(actors);
+		info.addDescription(plot);
+	}
+
+	private static String attribute(XMLStreamReader xml, String name) throws XMLStreamException {
+		return XmlStreams.require(xml.getAttributeValue(null, name), name);
+	}
+
+	/**
+	 * OMDB is searched by title, which only the other providers know
+	 */
+	@Override
+	public Set<ItemInfo.Field> getRequiredFields() {
+		return EnumSet.of(ItemInfo.Field.TITLE);
 	}
 
 	@Override
 	public void run() {
-		String uri = String.format("http://www.omdbapi.com/?t=%s&y=&plot=full&r=xml", info.getTitle());
+		String uri;
+		try {
+			uri = String.format("http://www.omdbapi.com/?t=%s&y=&plot=full&r=xml",
+					URLEncoder.encode(info.getTitle(), "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+			return;
+		}
 		fillContent(uri);
 	}
 	
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.lookup;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull-parsing helpers for the providers' XML responses. A Lookup reads the response as a stream of
+ * events, keeps the few elements it needs and stops once it has them, rather than building a DOM of the
+ * whole response. DTDs and external entities are never loaded, and each thread reuses one factory.
+ *
+ * @author groupKilo
+ */
+final class XmlStreams {
+
+    private static final ThreadLocal<XMLInputFactory> FACTORIES = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return factory;
+        }
+    };
+
+    private XmlStreams() {
+    }
+
+    /**
+     * @param in An XML document
+     * @return A reader positioned before its first event
+     * @throws XMLStreamException If the document cannot be read
+     */
+    static XMLStreamReader open(InputStream in) throws XMLStreamException {
+        return FACTORIES.get().createXMLStreamReader(in);
+    }
+
+    /**
+     * Like the DOM's getTextContent: the text of the element and all of its descendants.
+     * The reader must be on the element's start tag, and is left on its end tag.
+     *
+     * @param xml The reader
+     * @return The text
+     * @throws XMLStreamException If the document is malformed
+     */
+    static String readText(XMLStreamReader xml) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (xml.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(xml.getText());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * The text of each child of an element, by child name in document order.
+     * The reader must be on the element's start tag, and is left on its end tag.
+     *
+     * @param xml The reader
+     * @return The children's text
+     * @throws XMLStreamException If the document is malformed
+     */
+    static Map<String, List<String>> readChildren(XMLStreamReader xml) throws XMLStreamException {
+        Map<String, List<String>> children = new LinkedHashMap<String, List<String>>();
+        while (true) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.END_ELEMENT) return children;
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+            String name = xml.getLocalName();
+            List<String> texts = children.get(name);
+            if (texts == null) {
+                texts = new ArrayList<String>(1);
+                children.put(name, texts);
+            }
+            texts.add(readText(xml));
+        }
+    }
+
+    /**
+     * @param value A value read from the response, or null if it was missing
+     * @param name The element or attribute it came from
+     * @return The value
+     * @throws XMLStreamException If it is missing, which means the provider does not know the item
+     */
+    static <T> T require(T value, String name) throws XMLStreamException {
+        if (value == null)
+            throw new XMLStreamException("Response has no " + name);
+        return value;
+    }
+}
@@ -18,13 +18,23 @@ package cam.cl.kilo.parsing;
 
 import cam.cl.kilo.NLP.ItemInfo;
 import cam.cl.kilo.NLP.MashapeSummarizer;
-import org.jsoup.Jsoup;
+import cam.cl.kilo.lookup.HttpFetcher;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 
 //the whole process of the parser: 1.find the review links in the gadget 2.Goto those links and extract
@@ -40,6 +50,17 @@ import java.util.Vector;
  */
 public class Parser {
 
+	/**
+	 * Time after which review pages still being fetched are given up
+	 */
+	public static final long DEFAULT_DEADLINE_MILLIS = 8000;
+
+	/**
+	 * Most review pages fetched at once for one item; further pages are only requested while the
+	 * reviews gathered so far do not meet the budget
+	 */
+	public static final int FETCH_WINDOW = ReviewFetcher.DEFAULT_MAX_PER_HOST;
+
 	//parse needs more than URL, it also needs pattern1 for extract links from URL, pattern2 to extract
 	//reviews from the HTML of a given link
 	
@@ -57,7 +78,7 @@ public class Parser {
 		
 		Vector<String> vectorOfReviews = null;
 		try {
-			Document doc = Jsoup.connect(URL).get();
+			Document doc = HttpFetcher.getShared().getHtml(URL);
 			Elements tagsWithLink = getLinks(doc,pattern1);
 			int size = tagsWithLink.size();
 			String[] linksArray = new String[size];
@@ -79,6 +100,36 @@ public class Parser {
 		info.setReviews(vectorOfReviews);
 	}
 	
+	/**
+	 * Widget-first parse: the reviews are the snippets shown in the review widget, which take a single
+	 * request. Only while the snippets do not meet the budget are the pages of the reviews cut short
+	 * fetched, in widget order, and their full text used instead; a review whose page cannot be fetched
+	 * keeps its snippet.
+	 *
+	 *@param URL The review widget url.
+	 *@param widget The layout of the widget.
+	 *@param budget The amount of review text worth gathering.
+	 *@param info The ItemInfo's object.
+	 */
+	public static void parseWidget(String URL, ReviewWidget widget, ReviewBudget budget, ItemInfo info){
+		
+		List<ReviewWidget.Review> reviews;
+		try {
+			reviews = widget.read(HttpFetcher.getShared().getHtml(URL));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		String[] texts = new String[reviews.size()];
+		String[] links = new String[reviews.size()];
+		for (int i = 0; i < texts.length; i ++) {
+			texts[i] = reviews.get(i).getSnippet();
+			if (reviews.get(i).isTruncated()) links[i] = reviews.get(i).getLink();
+		}
+		info.setReviews(gather(texts, links, widget.getPagePattern(), budget));
+	}
+	
 	//the arg pattern is API dependent so we might want to pass the type of api to parse()
 	/**
 	 * Gets links of individual reviews from the review gadget HTML.
@@ -129,72 +180,72 @@ public class Parser {
 	}
 	
 	/**
-	 * General method for getting reviews from links.
+	 * General method for getting reviews from links, fetching only as many as the default budget needs.
 	 *
 	 *@param links url of individual reviews
 	 *@param pattern The pattern used for finding the review text from the review HTML by Jsoup's Element's
 	 * select method.
-	 *@return A Vector of reviews.
+	 *@return A Vector of the reviews that could be fetched, in the order of the links.
 	 */
 	//general method for getting reviews into vector from an array of urls
 	public static Vector<String> reviewFromLinks(String[] links, String pattern){
 		
-		int length = links.length;
-		Vector<String> vector = new Vector<String>(length);
-		LinkThread[] threads = new LinkThread[length];
-		
-		//put the links into Document for extractions
-		for(int i = 0; i < length; i ++){
-			
-			threads[i] = new LinkThread(links[i], pattern);
-			threads[i].start();
-			
-		}
-		
-		for(int i = 0; i < length; i ++){
-			
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			
-		}
-		
-		for(int i = 0; i < length; i ++){
-			
-			vector.add(i, threads[i].review);
-			
-		}
-		return vector;
+		String[] texts = new String[links.length];
+		Arrays.fill(texts, "");
+		return gather(texts, links.clone(), pattern, ReviewBudget.DEFAULT);
 		
 	}
+	
 	/**
-	 * Thread Class for allowing to get reviews in parellel.
+	 * Replaces review texts by the text of their pages until the budget is met. Pages are requested in
+	 * order, at most FETCH_WINDOW at a time, through the shared ReviewFetcher; once the budget is met, or
+	 * the deadline passes, or the calling thread is interrupted, no more are requested and those still
+	 * being fetched are cancelled.
+	 *
+	 *@param texts The review texts known so far, most important first, e.g. snippets or empty strings;
+	 * updated in place.
+	 *@param links For each review, the page with its full text, or null if there is none to fetch.
+	 *@param pattern Selects the review text on a page.
+	 *@param budget The amount of review text worth gathering.
+	 *@return The leading non-empty reviews that meet the budget.
 	 */
-	static class LinkThread extends Thread {
+	static Vector<String> gather(String[] texts, String[] links, String pattern, ReviewBudget budget){
 		
-		public String review;
-		public String link;
-		public String pattern;
+		List<String> reviews = Arrays.asList(texts);
+		Map<Integer, CompletableFuture<String>> outstanding = new HashMap<Integer, CompletableFuture<String>>();
+		final BlockingQueue<Integer> completed = new LinkedBlockingQueue<Integer>();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEADLINE_MILLIS);
+		int next = 0;
 		
-		public LinkThread(String link, String pattern) {
-			this.link = link;
-			this.pattern = pattern;
-		}
-		
-		public void run() {
-			
-			Document page;
-			try {
-				page = Jsoup.connect(link).get();
-				Elements elements = getLinks(page,pattern);
-				review = removeTags(elements.get(0));
-			} catch (IOException e) {
-				e.printStackTrace();
+		try {
+			while (!budget.isMet(reviews)) {
+				for (; next < links.length && outstanding.size() < FETCH_WINDOW; next ++) {
+					if (links[next] == null) continue;
+					final int i = next;
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					CompletableFuture<String> page = ReviewFetcher.getShared()
+							.fetch(new String[] { links[i] }, pattern, Math.max(remaining, 1)).get(0);
+					outstanding.put(i, page);
+					page.whenComplete((text, t) -> completed.add(i));
+				}
+				if (outstanding.isEmpty()) break;
+				
+				Integer i = completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (i == null) break;
+				try {
+					texts[i] = outstanding.remove(i).join().trim();
+				} catch (CompletionException | CancellationException e) {
+					System.err.println("Skipping review page: " + e);
+				}
 			}
-			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// Nobody will read these any more
+			for (CompletableFuture<String> page : outstanding.values())
+				page.cancel(false);
 		}
+		return budget.take(reviews);
 		
 	}
 	
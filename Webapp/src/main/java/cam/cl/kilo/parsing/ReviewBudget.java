@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * How much review text is worth gathering for a summary. MEAD picks a few sentences and its cost grows
+ * faster than its input, so once the reviews gathered reach either the character or the sentence limit,
+ * no more pages are fetched and the reviews after that point are left out.
+ *
+ * @author groupKilo
+ */
+public class ReviewBudget {
+
+    public static final int DEFAULT_CHARS = 3000;
+    public static final int DEFAULT_SENTENCES = 30;
+
+    /**
+     * The budget for GoodReads reviews, set with the kilo.reviews.budget* system properties
+     */
+    public static final ReviewBudget DEFAULT = new ReviewBudget(
+            Integer.getInteger("kilo.reviews.budgetChars", DEFAULT_CHARS),
+            Integer.getInteger("kilo.reviews.budgetSentences", DEFAULT_SENTENCES));
+
+    private final int chars;
+    private final int sentences;
+
+    /**
+     * @param chars Characters of review text that are enough
+     * @param sentences Sentences of review text that are enough
+     */
+    public ReviewBudget(int chars, int sentences) {
+        this.chars = chars;
+        this.sentences = sentences;
+    }
+
+    /**
+     * @param reviews Review texts
+     * @return Whether they are enough text between them
+     */
+    public boolean isMet(List<String> reviews) {
+        int c = 0;
+        int s = 0;
+        for (String review : reviews) {
+            c += review.length();
+            s += countSentences(review);
+            if (c >= chars || s >= sentences) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param reviews Review texts, most important first; empty ones are skipped
+     * @return The leading reviews up to and including the one that meets the budget, or all of them
+     */
+    public Vector<String> take(List<String> reviews) {
+        Vector<String> taken = new Vector<String>();
+        int c = 0;
+        int s = 0;
+        for (String review : reviews) {
+            if (review.isEmpty()) continue;
+            taken.add(review);
+            c += review.length();
+            s += countSentences(review);
+            if (c >= chars || s >= sentences) break;
+        }
+        return taken;
+    }
+
+    /**
+     * @param text Some prose
+     * @return The number of sentences, counted as runs of . ! or ? followed by whitespace or the end;
+     *         text without such an ending counts as one
+     */
+    static int countSentences(String text) {
+        int count = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c != '.' && c != '!' && c != '?') continue;
+            while (i + 1 < length && (text.charAt(i + 1) == '.' || text.charAt(i + 1) == '!'
+                    || text.charAt(i + 1) == '?'))
+                i++;
+            if (i + 1 == length || Character.isWhitespace(text.charAt(i + 1))) count++;
+        }
+        if (count == 0 && !text.trim().isEmpty()) count = 1;
+        return count;
+    }
+
+    /**
+     * @return Characters of review text that are enough
+     */
+    public int getChars() {
+        return chars;
+    }
+
+    /**
+     * @return Sentences of review text that are enough
+     */
+    public int getSentences() {
+        return sentences;
+    }
+}
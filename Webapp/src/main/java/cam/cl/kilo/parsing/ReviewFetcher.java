@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import cam.cl.kilo.concurrent.DaemonThreadFactory;
+import cam.cl.kilo.lookup.HttpFetcher;
+import org.apache.http.client.methods.HttpGet;
+import org.jsoup.nodes.Document;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches review pages on a fixed pool of threads, so that the number of threads stays the same however
+ * many reviews are requested. At most a few pages are fetched from one host at a time; the rest wait in
+ * that host's queue without holding a thread. Each page has a timeout once its fetch starts, and all pages
+ * of a request are cancelled when the request's deadline passes; a fetch in progress is then aborted.
+ *
+ * @author groupKilo
+ */
+public class ReviewFetcher {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    public static final long DEFAULT_LINK_TIMEOUT_MILLIS = 5000;
+
+    private static final ReviewFetcher SHARED = new ReviewFetcher(HttpFetcher.getShared(),
+            Integer.getInteger("kilo.reviews.threads", DEFAULT_THREADS),
+            Integer.getInteger("kilo.reviews.maxPerHost", DEFAULT_MAX_PER_HOST),
+            Long.getLong("kilo.reviews.linkTimeout", DEFAULT_LINK_TIMEOUT_MILLIS));
+
+    private final HttpFetcher http;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final int maxPerHost;
+    private final long linkTimeoutMillis;
+    // Guarded by itself; a host is present while it has pages being fetched
+    private final Map<String, Host> hosts = new HashMap<String, Host>();
+
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * @param http Client for the pages
+     * @param threads Most pages fetched at once
+     * @param maxPerHost Most pages fetched at once from one host
+     * @param linkTimeoutMillis Longest time to fetch one page
+     */
+    public ReviewFetcher(HttpFetcher http, int threads, int maxPerHost, long linkTimeoutMillis) {
+        this.http = http;
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("review"));
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                new DaemonThreadFactory("review-timeout"));
+        // Timeouts are almost always cancelled, so do not keep them until they would have fired
+        timer.setRemoveOnCancelPolicy(true);
+        this.timer = timer;
+        this.maxPerHost = maxPerHost;
+        this.linkTimeoutMillis = linkTimeoutMillis;
+    }
+
+    /**
+     * @return The instance used by Parser
+     */
+    public static ReviewFetcher getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Stops the fetching threads; the shared instance only once the webapp is undeployed
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * @param links The review pages
+     * @param pattern Selects the review text on a page, as for Parser.getLinks
+     * @param deadlineMillis Time after which the reviews not yet fetched are cancelled
+     * @return A future for each link's review text, in the order of the links, each completing as soon as
+     *         its page has been fetched; one fails if its page cannot be fetched or has no review, times out
+     *         or is cancelled. Cancelling one aborts its fetch.
+     */
+    public List<CompletableFuture<String>> fetch(String[] links, String pattern, long deadlineMillis) {
+        final List<CompletableFuture<String>> reviews = new ArrayList<CompletableFuture<String>>(links.length);
+        for (String link : links)
+            reviews.add(fetch(link, pattern));
+
+        final ScheduledFuture<?> deadline = timer.schedule(() -> {
+            for (CompletableFuture<String> review : reviews)
+                review.cancel(false);
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+        CompletableFuture.allOf(reviews.toArray(new CompletableFuture<?>[reviews.size()]))
+                .whenComplete((done, t) -> deadline.cancel(false));
+        return reviews;
+    }
+
+    private CompletableFuture<String> fetch(String link, String pattern) {
+        final Task task;
+        try {
+            task = new Task(new HttpGet(link), pattern);
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<String> review = new CompletableFuture<String>();
+            review.completeExceptionally(e);
+            failed.incrementAndGet();
+            return review;
+        }
+        task.review.whenComplete((text, t) -> {
+            if (t == null) {
+                fetched.incrementAndGet();
+                return;
+            }
+            task.request.abort();
+            if (t instanceof CancellationException) cancelled.incrementAndGet();
+            else if (t instanceof TimeoutException) timedOut.incrementAndGet();
+            else failed.incrementAndGet();
+        });
+        dispatch(task);
+        return task.review;
+    }
+
+    private void dispatch(Task task) {
+        synchronized (hosts) {
+            Host host = hosts.get(task.host);
+            if (host == null) {
+                host = new Host();
+                hosts.put(task.host, host);
+            }
+            if (host.active >= maxPerHost) {
+                host.waiting.add(task);
+                return;
+            }
+            host.active++;
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Hands the finished task's slot to the next page waiting for the same host
+     */
+    private void finished(Task task) {
+        Task next;
+        synchronized (hosts) {
+            Host host = hosts.get(task.host);
+            do {
+                next = host.waiting.poll();
+            } while (next != null && next.review.isDone());
+            if (next == null) {
+                if (--host.active == 0) hosts.remove(task.host);
+                return;
+            }
+        }
+        executor.execute(next);
+    }
+
+    /**
+     * @return Pages fetched with a review
+     */
+    public long getFetched() {
+        return fetched.get();
+    }
+
+    /**
+     * @return Pages that could not be fetched or had no review
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Pages not fetched within the timeout
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return Pages cancelled, mostly because their request's deadline passed
+     */
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return Pages waiting for a free slot for their host
+     */
+    public int getWaiting() {
+        int waiting = 0;
+        synchronized (hosts) {
+            for (Host host : hosts.values())
+                waiting += host.waiting.size();
+        }
+        return waiting;
+    }
+
+    private static class Host {
+        int active;
+        final Deque<Task> waiting = new ArrayDeque<Task>();
+    }
+
+    private class Task implements Runnable {
+        final HttpGet request;
+        final String pattern;
+        final String host;
+        final CompletableFuture<String> review = new CompletableFuture<String>();
+
+        Task(HttpGet request, String pattern) {
+            this.request = request;
+            this.pattern = pattern;
+            String host = request.getURI().getHost();
+            this.host = host != null ? host : "unknown";
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Cancelled while it waited
+                if (review.isDone()) return;
+                ScheduledFuture<?> timeout = timer.schedule(() -> review.completeExceptionally(
+                        new TimeoutException("No review from " + request.getURI() + " after "
+                                + linkTimeoutMillis + "ms")), linkTimeoutMillis, TimeUnit.MILLISECONDS);
+                try {
+                    Document page = http.getHtml(request);
+                    review.complete(Parser.removeTags(Parser.getLinks(page, pattern).get(0)));
+                } catch (Exception e) {
+                    // Also when the page has no element matching the pattern
+                    review.completeExceptionally(e);
+                } finally {
+                    timeout.cancel(false);
+                }
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The layout of a provider's reviews widget: an HTML page listing the top reviews, each with a snippet of
+ * its text and a link to the full review. Reading the snippets takes one request for the whole widget,
+ * where reading the full reviews takes one more per review.
+ *
+ * @author groupKilo
+ */
+public class ReviewWidget {
+
+    /**
+     * The GoodReads reviews_widget_iframe page
+     */
+    public static final ReviewWidget GOODREADS = new ReviewWidget(
+            "div.gr_review_container", "div.gr_review_text", "link[itemprop=\"url\"][href]",
+            "a.gr_more_link", "div[class=\"reviewText mediumText description\"]");
+
+    private final String reviewPattern;
+    private final String textPattern;
+    private final String linkPattern;
+    private final String morePattern;
+    private final String pagePattern;
+
+    /**
+     * Patterns are Jsoup selectors
+     *
+     * @param reviewPattern Selects each review in the widget
+     * @param textPattern Selects the snippet within a review
+     * @param linkPattern Selects the element within a review whose href is the full review's page
+     * @param morePattern Selects the link within a snippet that shows it was cut short
+     * @param pagePattern Selects the review text on the full review's page
+     */
+    public ReviewWidget(String reviewPattern, String textPattern, String linkPattern, String morePattern,
+                        String pagePattern) {
+        this.reviewPattern = reviewPattern;
+        this.textPattern = textPattern;
+        this.linkPattern = linkPattern;
+        this.morePattern = morePattern;
+        this.pagePattern = pagePattern;
+    }
+
+    /**
+     * @param widget The widget page
+     * @return Its reviews in the order shown; reviews without any text are left out
+     */
+    public List<Review> read(Document widget) {
+        List<Review> reviews = new ArrayList<Review>();
+        for (Element review : widget.select(reviewPattern)) {
+            Element text = review.select(textPattern).first();
+            if (text == null) continue;
+            text = text.clone();
+            boolean truncated = !text.select(morePattern).remove().isEmpty();
+            String snippet = text.text().trim();
+            if (snippet.isEmpty()) continue;
+            Element link = review.select(linkPattern).first();
+            reviews.add(new Review(snippet, link != null ? link.absUrl("href") : null, truncated));
+        }
+        return reviews;
+    }
+
+    /**
+     * @return Selects the review text on a full review's page, as for Parser.getLinks
+     */
+    public String getPagePattern() {
+        return pagePattern;
+    }
+
+    /**
+     * A review as shown in the widget
+     */
+    public static class Review {
+        private final String snippet;
+        private final String link;
+        private final boolean truncated;
+
+        Review(String snippet, String link, boolean truncated) {
+            this.snippet = snippet;
+            this.link = link;
+            this.truncated = truncated;
+        }
+
+        /**
+         * @return The text shown in the widget
+         */
+        public String getSnippet() {
+            return snippet;
+        }
+
+        /**
+         * @return The full review's page, or null if the widget does not link to it
+         */
+        public String getLink() {
+            return link;
+        }
+
+        /**
+         * @return Whether the snippet is only the start of the review, so that its page has more text
+         */
+        public boolean isTruncated() {
+            return truncated && link != null && !link.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.Lookup;
+import cam.cl.kilo.lookup.LookupEngine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class CacheWarmerTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final SummaryService service = new SummaryService(new LookupEngine(16, 1000), new SummaryService.LookupFactory() {
+        @Override
+        public List<Lookup> create(final String barcodeNo, String barcodeType, ItemInfo info) {
+            return Collections.<Lookup>singletonList(new Lookup(barcodeNo, barcodeType, info) {
+                @Override
+                public void run() {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    fillContent(null);
+                }
+
+                @Override
+                protected void fillContent(String requestURL) {
+                    info.setTitle("Item " + barcodeNo);
+                }
+            });
+        }
+    }, Executors.newFixedThreadPool(4)) {
+        @Override
+        public String summarizeDescriptions(ItemInfo info) {
+            return "";
+        }
+
+        @Override
+        public String summarizeReviews(ItemInfo info) {
+            return "";
+        }
+    };
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    private static String ean(int i) {
+        String digits = String.format("50%010d", i);
+        return digits + Barcode.checkDigit(digits);
+    }
+
+    private static List<Barcode> barcodes(int n) {
+        List<Barcode> barcodes = new ArrayList<Barcode>();
+        for (int i = 0; i < n; i++)
+            barcodes.add(Barcode.parse(ean(i)));
+        return barcodes;
+    }
+
+    @Test
+    public void readsBarcodeList() throws IOException {
+        List<Barcode> barcodes = CacheWarmer.readBarcodeList(new StringReader(
+                "020161622X      The pragmatic programmer\n"
+                        + "978-0764570681  C for Dummies\n"
+                        + "\n# comment\n"
+                        + "5012345678900   Some product\n"
+                        + "12345           Misread\n"
+                        + "9780201616224   The pragmatic programmer again\n"));
+
+        assertEquals("[ISBN:9780201616224, ISBN:9780764570681, EAN:5012345678900]", barcodes.toString());
+    }
+
+    @Test
+    public void replaysAccessLogHottestFirst() throws IOException {
+        String log = ""
+                + "1.2.3.4 - - [01/Mar/2015:10:00:00 +0000] \"GET /ProjectKiloWebApp/barcode?barcodeNo=020161622X&barcodeType=ISBN HTTP/1.1\" 200 10\n"
+                + "1.2.3.4 - - [01/Mar/2015:10:00:01 +0000] \"GET /ProjectKiloWebApp/barcode?barcodeNo=036000291452&barcodeType=PRODUCT HTTP/1.1\" 200 10\n"
+                + "1.2.3.4 - - [01/Mar/2015:10:00:02 +0000] \"GET /ProjectKiloWebApp/barcode/async?barcodeType=PRODUCT&barcodeNo=0036000291452 HTTP/1.1\" 200 10\n"
+                + "1.2.3.4 - - [01/Mar/2015:10:00:03 +0000] \"GET /ProjectKiloWebApp/barcode/ready HTTP/1.1\" 200 10\n"
+                + "1.2.3.4 - - [01/Mar/2015:10:00:04 +0000] \"GET /ProjectKiloWebApp/barcode?barcodeNo=3 HTTP/1.1\" 200 10\n"
+                + "1.2.3.4 - - [01/Mar/2015:10:00:05 +0000] \"GET /ProjectKiloWebApp/barcode?barcodeNo=978-0764570681 HTTP/1.1\" 200 10\n";
+
+        assertEquals("[UPC:036000291452, ISBN:9780201616224, ISBN:9780764570681]",
+                CacheWarmer.readAccessLog(new StringReader(log), 10).toString());
+        assertEquals("[UPC:036000291452]", CacheWarmer.readAccessLog(new StringReader(log), 1).toString());
+    }
+
+    @Test
+    public void fillsCacheWithinConcurrencyLimit() {
+        CacheWarmer warmer = new CacheWarmer(service, 3, 1000);
+
+        assertEquals(12, warmer.warm(barcodes(12)));
+        assertTrue(warmer.isDone());
+        assertTrue("max " + maxRunning.get(), maxRunning.get() <= 3);
+        assertNotNull(service.getCache().get(Barcode.parse(ean(11)).toString()));
+    }
+
+    @Test(timeout = 10000)
+    public void itemThatThrowsDoesNotHoldItsPermit() {
+        final String rejected = Barcode.parse(ean(1)).toString();
+        SummaryService throwing = new SummaryService(new LookupEngine(1, 1000),
+                (barcodeNo, barcodeType, info) -> Collections.<Lookup>emptyList(), Executors.newFixedThreadPool(1)) {
+            @Override
+            public CompletableFuture<EncodedSummary> summarize(Barcode barcode) {
+                if (barcode.toString().equals(rejected))
+                    throw new IllegalStateException("rejected");
+                return service.summarize(barcode);
+            }
+        };
+        CacheWarmer warmer = new CacheWarmer(throwing, 1, 1000);
+
+        try {
+            assertEquals(2, warmer.warm(barcodes(3)));
+            assertTrue(warmer.isDone());
+        } finally {
+            throwing.shutdown();
+        }
+    }
+
+    @Test
+    public void respectsRateCap() {
+        CacheWarmer warmer = new CacheWarmer(service, 8, 20);
+        long start = System.nanoTime();
+        warmer.warm(barcodes(6));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Five intervals of 50ms between the six starts
+        assertTrue("took " + elapsed + "ms", elapsed >= 240);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class DictionaryTrainerTest {
+
+    private static List<byte[]> samples() throws Exception {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 0; i < 20; i++)
+            samples.add(("Item " + i + ": I really enjoyed this book and would recommend it. "
+                    + UUID.nameUUIDFromBytes(new byte[] { (byte) i })).getBytes("UTF-8"));
+        return samples;
+    }
+
+    @Test
+    public void keepsTextSharedBySamples() throws Exception {
+        String dictionary = new String(DictionaryTrainer.train(samples(), 1024), "UTF-8");
+
+        assertTrue(dictionary, dictionary.contains("really enjoyed this book"));
+        assertFalse(dictionary, dictionary.contains(UUID.nameUUIDFromBytes(new byte[] { 0 }).toString()));
+    }
+
+    @Test
+    public void respectsSizeLimit() throws Exception {
+        assertTrue(DictionaryTrainer.train(samples(), 20).length <= 20);
+    }
+
+    @Test
+    public void emptyWithoutSharedText() throws Exception {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        samples.add("abcdefghijklmnop".getBytes("UTF-8"));
+        samples.add("qrstuvwxyz012345".getBytes("UTF-8"));
+        assertEquals(0, DictionaryTrainer.train(samples, 1024).length);
+    }
+}
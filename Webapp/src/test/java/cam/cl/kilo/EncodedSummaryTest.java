@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.Summary;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author groupKilo
+ */
+public class EncodedSummaryTest {
+
+    private static Summary summary(String title) {
+        ItemInfo info = new ItemInfo();
+        info.setTitle(title);
+        return new Summary(info, "A description.", "A review.");
+    }
+
+    @Test
+    public void bodyIsBase64SerializedSummary() throws Exception {
+        EncodedSummary encoded = EncodedSummary.of(summary("Dune"));
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+                Base64.decodeBase64(encoded.getBody())));
+        assertEquals("Dune", ((Summary) ois.readObject()).getTitle());
+    }
+
+    @Test
+    public void etagFollowsContent() {
+        EncodedSummary dune = EncodedSummary.of(summary("Dune"));
+
+        assertEquals(dune.getEtag(), EncodedSummary.of(summary("Dune")).getEtag());
+        assertNotEquals(dune.getEtag(), EncodedSummary.of(summary("Emma")).getEtag());
+        assertEquals('"', dune.getEtag().charAt(0));
+    }
+
+    @Test
+    public void roundTripsThroughSerializedForm() throws IOException {
+        EncodedSummary encoded = EncodedSummary.of(summary("Dune"));
+        EncodedSummary decoded = EncodedSummary.fromSerialized(encoded.toSerialized());
+
+        assertEquals("Dune", decoded.getSummary().getTitle());
+        assertArrayEquals(encoded.getBody(), decoded.getBody());
+        assertEquals(encoded.getEtag(), decoded.getEtag());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsGarbage() throws IOException {
+        EncodedSummary.fromSerialized(new byte[] { 1, 2, 3 });
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.NLP;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author groupKilo
+ */
+public class SummaryCodecTest {
+
+    private static Summary summary(String reviews) {
+        ItemInfo info = new ItemInfo();
+        info.setTitle("Dune");
+        info.addAuthor("Frank Herbert");
+        return new Summary(info, "A desert planet. A spice — épice.", reviews);
+    }
+
+    private static void assertSameSummary(Summary expected, Summary actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getAuthors(), actual.getAuthors());
+        assertEquals(expected.getText(), actual.getText());
+    }
+
+    @Test
+    public void roundTripsWithReviews() throws IOException {
+        Summary summary = summary("Great. Long.");
+        Summary decoded = SummaryCodec.decode(SummaryCodec.encode(summary));
+
+        assertSameSummary(summary, decoded);
+        assertEquals("BEGIN_REVIEWS", decoded.getText().get(2));
+        assertEquals("BEGIN_REVIEWS", decoded.BEGIN_REVIEWS);
+    }
+
+    @Test
+    public void roundTripsWithoutReviews() throws IOException {
+        Summary summary = summary("");
+        assertSameSummary(summary, SummaryCodec.decode(SummaryCodec.encode(summary)));
+    }
+
+    @Test
+    public void roundTripsMissingTitleAndTrailingMarker() throws IOException {
+        Summary summary = new Summary(null, Arrays.<String>asList(), Arrays.asList("One.", "BEGIN_REVIEWS"));
+        Summary decoded = SummaryCodec.decode(SummaryCodec.encode(summary));
+
+        assertNull(decoded.getTitle());
+        assertSameSummary(summary, decoded);
+    }
+
+    @Test
+    public void roundTripsLongStrings() throws IOException {
+        char[] chars = new char[100000];
+        Arrays.fill(chars, 'x');
+        Summary summary = new Summary(new String(chars), Arrays.asList("A"), Arrays.asList("B"));
+        assertSameSummary(summary, SummaryCodec.decode(SummaryCodec.encode(summary)));
+    }
+
+    @Test
+    public void isSmallerThanJavaSerialization() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(summary("Great."));
+        oos.close();
+
+        assertTrue(SummaryCodec.encode(summary("Great.")).length < baos.size() / 2);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] data = SummaryCodec.encode(summary(""));
+        data[1] = (byte) (SummaryCodec.VERSION + 1);
+        SummaryCodec.decode(data);
+    }
+
+    @Test
+    public void rejectsTruncatedData() {
+        byte[] data = SummaryCodec.encode(summary("Great."));
+        for (int length = 0; length < data.length; length++) {
+            try {
+                SummaryCodec.decode(Arrays.copyOf(data, length));
+                fail("Decoded " + length + " of " + data.length + " bytes");
+            } catch (IOException expected) {
+            }
+        }
+    }
+}
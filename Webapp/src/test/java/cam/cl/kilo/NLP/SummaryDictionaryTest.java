@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.NLP;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author groupKilo
+ */
+public class SummaryDictionaryTest {
+
+    private static byte[] payload() {
+        ItemInfo info = new ItemInfo();
+        info.setTitle("Real World OCaml");
+        info.addAuthor("Yaron Minsky");
+        return SummaryCodec.encode(new Summary(info,
+                "This book is a must-read for anyone who wants to learn more about functional programming.",
+                "I really enjoyed this book and would recommend it to anyone. The examples are very helpful."));
+    }
+
+    private static int plainDeflateSize(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+        deflater.end();
+        return out.size();
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        byte[] data = payload();
+        assertArrayEquals(data, SummaryDictionary.decompress(SummaryDictionary.compress(data)));
+        assertArrayEquals(new byte[0], SummaryDictionary.decompress(SummaryDictionary.compress(new byte[0])));
+    }
+
+    @Test
+    public void beatsPlainDeflateOnShortSummaries() {
+        byte[] data = payload();
+        assertTrue(SummaryDictionary.compress(data).length < plainDeflateSize(data) * 3 / 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsStreamWithoutDictionary() throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setDictionary("some other dictionary".getBytes("UTF-8"));
+        deflater.setInput(payload());
+        deflater.finish();
+        byte[] buffer = new byte[4096];
+        int n = deflater.deflate(buffer);
+        deflater.end();
+
+        SummaryDictionary.decompress(Arrays.copyOf(buffer, n));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedStream() throws IOException {
+        byte[] compressed = SummaryDictionary.compress(payload());
+        SummaryDictionary.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.Lookup;
+import cam.cl.kilo.lookup.LookupEngine;
+import org.apache.commons.codec.binary.Base64;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares how many scans a small container pool keeps in flight with the blocking and the suspended
+ * resource, and checks what the streaming, batch and job resources send. Providers are simulated by Lookups that sleep, and MEAD is bypassed.
+ *
+ * @author groupKilo
+ */
+public class RESTBarcodeLoadTest {
+
+    private static final int CONTAINER_THREADS = 4;
+    private static final int REQUESTS = 64;
+    private static final long PROVIDER_LATENCY_MILLIS = 100;
+
+    private ExecutorService container;
+    private SlowProviders providers;
+    private SummaryService service;
+    private RESTBarcode resource;
+
+    @Before
+    public void setUp() {
+        container = Executors.newFixedThreadPool(CONTAINER_THREADS);
+        providers = new SlowProviders();
+        service = new SummaryService(new LookupEngine(REQUESTS, 5000), providers,
+                Executors.newFixedThreadPool(CONTAINER_THREADS)) {
+            @Override
+            public String summarizeDescriptions(ItemInfo info) {
+                return info.getDescriptionsAsString();
+            }
+
+            @Override
+            public String summarizeReviews(ItemInfo info) {
+                return "";
+            }
+        };
+        resource = new RESTBarcode(service);
+    }
+
+    @After
+    public void tearDown() {
+        container.shutdownNow();
+        service.shutdown();
+    }
+
+    @Test
+    public void asyncResourceScalesBeyondContainerPool() throws Exception {
+        // Different items for each, so that neither is answered from the other's cache
+        long blocking = runBlocking(0);
+        int blockingInFlight = providers.getMaxInFlight();
+        providers.resetMaxInFlight();
+        long async = runAsync(REQUESTS);
+        int asyncInFlight = providers.getMaxInFlight();
+        assertEquals(2 * REQUESTS, service.getFlights().getStarted());
+
+        System.out.printf("%d requests on %d container threads: blocking %dms with at most %d lookups at once, "
+                + "async %dms with %d%n", REQUESTS, CONTAINER_THREADS, blocking, blockingInFlight, async, asyncInFlight);
+
+        // Each blocked container thread holds one lookup, while suspended requests leave it free for the next
+        assertTrue("blocking " + blockingInFlight + " lookups at once", blockingInFlight <= CONTAINER_THREADS);
+        assertTrue("async " + asyncInFlight + " lookups at once", asyncInFlight > CONTAINER_THREADS);
+    }
+
+    @Test
+    public void streamSendsTitleBeforeSummary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CompletableFuture<Response> ended = new CompletableFuture<Response>();
+        resource.stream(isbn(1), "ISBN", out, new AsynchronousResponse() {
+            @Override
+            public void setResponse(Response r) {
+                ended.complete(r);
+            }
+        });
+        // The events are written by the lookup's callbacks, not by the thread that started the stream
+        assertFalse(ended.isDone());
+        assertEquals(200, ended.get(10, TimeUnit.SECONDS).getStatus());
+
+        List<String> names = new ArrayList<String>();
+        List<Summary> summaries = new ArrayList<Summary>();
+        List<String> ids = new ArrayList<String>();
+        for (String event : out.toString("UTF-8").split("\n\n")) {
+            String[] lines = event.split("\n");
+            names.add(lines[0].substring("event: ".length()));
+            summaries.add(SummaryCodec.decode(Base64.decodeBase64(lines[1].substring("data: ".length()))));
+            ids.add(lines.length > 2 ? lines[2].substring("id: ".length()) : null);
+        }
+
+        assertEquals(Arrays.asList("partial", "partial", "summary"), names);
+        assertEquals("Item " + isbn(1), summaries.get(0).getTitle());
+        assertTrue(summaries.get(0).getText().isEmpty());
+        assertEquals("Description of item " + isbn(1) + ".", summaries.get(2).getText().get(0));
+        // Only the final summary can be revalidated later
+        assertEquals(Arrays.asList(null, null, service.getCache().get("ISBN:" + isbn(1)).getBinaryEtag()), ids);
+    }
+
+    @Test
+    public void batchDeduplicatesAndKeepsOrder() throws Exception {
+        // ISBN-10 and ISBN-13 of the same book, then an invalid entry and another book
+        Response response = batch(isbn(1) + "\n0-00-000001-9, 12345\n" + isbn(2) + " " + isbn(1));
+
+        assertEquals(200, response.getStatus());
+        Map<String, Summary> summaries = SummaryBatch.decode((byte[]) response.getEntity());
+        assertEquals(Arrays.asList("ISBN:" + isbn(1), "12345", "ISBN:" + isbn(2)),
+                new ArrayList<String>(summaries.keySet()));
+        assertEquals("Item " + isbn(1), summaries.get("ISBN:" + isbn(1)).getTitle());
+        assertEquals(SummaryService.INVALID_BARCODE.getSummary().getText(), summaries.get("12345").getText());
+        assertEquals(2, service.getCache().size());
+    }
+
+    @Test
+    public void batchBoundsParallelism() throws Exception {
+        StringBuilder barcodes = new StringBuilder();
+        for (int i = 0; i < 2 * RESTBarcode.BATCH_PARALLELISM; i++)
+            barcodes.append(isbn(i)).append('\n');
+
+        Response response = batch(barcodes.toString());
+
+        assertEquals(2 * RESTBarcode.BATCH_PARALLELISM, SummaryBatch.decode((byte[]) response.getEntity()).size());
+        // Items are looked up side by side, but never more than BATCH_PARALLELISM of them
+        int inFlight = providers.getMaxInFlight();
+        assertTrue(inFlight + " lookups at once", inFlight > 1);
+        assertTrue(inFlight + " lookups at once", inFlight <= RESTBarcode.BATCH_PARALLELISM);
+    }
+
+    @Test
+    public void batchRejectsEmptyAndOversizedRequests() throws Exception {
+        assertEquals(400, batch(" \n").getStatus());
+
+        StringBuilder barcodes = new StringBuilder();
+        for (int i = 0; i <= RESTBarcode.MAX_BATCH_SIZE; i++)
+            barcodes.append(isbn(i)).append(',');
+        assertEquals(413, batch(barcodes.toString()).getStatus());
+    }
+
+    @Test
+    public void jobSurvivesTheClientAndIsCollectedOnce() throws Exception {
+        Response submitted = resource.submitJob(isbn(1), "ISBN");
+        assertEquals(202, submitted.getStatus());
+        String id = (String) submitted.getEntity();
+        assertEquals("jobs/" + id, submitted.getMetadata().getFirst("Location"));
+
+        // The client goes away and submits again under another spelling
+        assertEquals(id, resource.submitJob("0-00-000001-9", "ISBN").getEntity());
+        assertEquals(202, poll(id, 0).getStatus());
+
+        Response done = poll(id, 5);
+        assertEquals(200, done.getStatus());
+        assertEquals("Item " + isbn(1), EncodedSummary.fromSerialized(Base64.decodeBase64((byte[]) done.getEntity()))
+                .getSummary().getTitle());
+        assertEquals(1, service.getFlights().getStarted());
+        assertEquals(404, poll("no-such-job", 0).getStatus());
+    }
+
+    private Response poll(String id, int waitSeconds) throws Exception {
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        resource.pollJob(id, waitSeconds, null, null, new AsynchronousResponse() {
+            @Override
+            public void setResponse(Response r) {
+                result.complete(r);
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private Response batch(String barcodes) throws Exception {
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        resource.produceBatchResponse(barcodes, null, new AsynchronousResponse() {
+            @Override
+            public void setResponse(Response r) {
+                result.complete(r);
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private long runBlocking(int first) throws Exception {
+        List<Future<Response>> responses = new ArrayList<Future<Response>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            final String barcode = isbn(first + i);
+            responses.add(container.submit(() -> resource.produceResponse(barcode, "ISBN", null, null)));
+        }
+        for (Future<Response> response : responses)
+            assertEquals(200, response.get().getStatus());
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long runAsync(int first) throws Exception {
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+        final AtomicInteger ok = new AtomicInteger();
+        final AsynchronousResponse response = new AsynchronousResponse() {
+            @Override
+            public void setResponse(Response r) {
+                if (r.getStatus() == 200) ok.incrementAndGet();
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            final String barcode = isbn(first + i);
+            container.submit(() -> resource.produceAsyncResponse(barcode, "ISBN", null, null, response));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(REQUESTS, ok.get());
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String isbn(int i) {
+        String digits = String.format("978%09d", i);
+        return digits + Barcode.checkDigit(digits);
+    }
+
+    /**
+     * One provider per barcode, taking PROVIDER_LATENCY_MILLIS to answer, and recording how many of them
+     * answer at once
+     */
+    static class SlowProviders implements SummaryService.LookupFactory {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        int getMaxInFlight() {
+            return maxInFlight.get();
+        }
+
+        void resetMaxInFlight() {
+            maxInFlight.set(0);
+        }
+
+        @Override
+        public List<Lookup> create(final String barcodeNo, String barcodeType, ItemInfo info) {
+            return Collections.<Lookup>singletonList(new Lookup(barcodeNo, barcodeType, info) {
+                @Override
+                public void run() {
+                    int running = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(running, Math::max);
+                    try {
+                        Thread.sleep(PROVIDER_LATENCY_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                    fillContent(null);
+                }
+
+                @Override
+                protected void fillContent(String requestURL) {
+                    info.setTitle("Item " + barcodeNo);
+                    info.addDescription("Description of item " + barcodeNo + ".");
+                }
+            });
+        }
+    }
+}
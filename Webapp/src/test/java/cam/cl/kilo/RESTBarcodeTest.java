@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import cam.cl.kilo.NLP.SummaryDictionary;
+import org.junit.Test;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class RESTBarcodeTest {
+
+    private EncodedSummary summary = EncodedSummary.of(new Summary("Some text."));
+
+    @Test
+    public void sendsBodyWithEtag() {
+        Response response = RESTBarcode.buildResponse(summary, null, null);
+
+        assertEquals(200, response.getStatus());
+        assertSame(summary.getBody(), response.getEntity());
+        assertEquals(summary.getEtag(), response.getMetadata().getFirst(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void matchingEtagIsNotModified() {
+        Response response = RESTBarcode.buildResponse(summary, "\"stale\", " + summary.getEtag(), null);
+
+        assertEquals(304, response.getStatus());
+        assertNull(response.getEntity());
+        assertEquals(summary.getEtag(), response.getMetadata().getFirst(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void otherEtagGetsFullBody() {
+        assertEquals(200, RESTBarcode.buildResponse(summary, "\"stale\"", null).getStatus());
+    }
+
+    @Test
+    public void binaryResponseHasItsOwnEtag() throws Exception {
+        Response response = RESTBarcode.buildBinaryResponse(summary, summary.getEtag(), null);
+
+        assertEquals(200, response.getStatus());
+        assertSame(summary.getBinary(), response.getEntity());
+        assertEquals("Some text.", SummaryCodec.decode(summary.getBinary()).getText().get(0));
+        assertNotEquals(summary.getEtag(), summary.getBinaryEtag());
+        assertEquals(304, RESTBarcode.buildBinaryResponse(summary, summary.getBinaryEtag(), null).getStatus());
+    }
+
+    @Test
+    public void dictionaryCodingPreferredForBinary() throws Exception {
+        Response response = RESTBarcode.buildBinaryResponse(summary, null,
+                "gzip, " + SummaryDictionary.ENCODING);
+
+        assertSame(summary.getCompressedBinary(), response.getEntity());
+        assertEquals(SummaryDictionary.ENCODING, response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(summary.getBinary(), SummaryDictionary.decompress(summary.getCompressedBinary()));
+
+        String etag = (String) response.getMetadata().getFirst(HttpHeaders.ETAG);
+        assertNotEquals(summary.getBinaryEtag(), etag);
+        assertEquals(304, RESTBarcode.buildBinaryResponse(summary, etag, SummaryDictionary.ENCODING).getStatus());
+    }
+
+    @Test
+    public void gzipLeftToInterceptor() {
+        Response response = RESTBarcode.buildResponse(summary, null, "gzip, deflate");
+
+        assertSame(summary.getBody(), response.getEntity());
+        assertEquals("gzip", response.getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNull(RESTBarcode.buildResponse(summary, null, SummaryDictionary.ENCODING)
+                .getMetadata().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void acceptEncodingParsing() {
+        assertTrue(RESTBarcode.accepts("deflate, GZIP;q=0.5", "gzip"));
+        assertFalse(RESTBarcode.accepts("gzip;q=0, deflate", "gzip"));
+        assertFalse(RESTBarcode.accepts("gzip; q=0.0", "gzip"));
+        assertFalse(RESTBarcode.accepts("x-gzip", "gzip"));
+        assertFalse(RESTBarcode.accepts(null, "gzip"));
+    }
+
+    @Test
+    public void ifNoneMatchComparison() {
+        assertTrue(summary.matches("*"));
+        assertTrue(summary.matches("W/" + summary.getEtag()));
+        assertFalse(summary.matches(null));
+        assertFalse(summary.matches(summary.getEtag().replace("\"", "")));
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.cache.TinyLfuCache;
+import cam.cl.kilo.concurrent.AdmissionController;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.Lookup;
+import cam.cl.kilo.lookup.LookupEngine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the service against a provider that only recognises books,
+ * counting how often it is queried. MEAD is bypassed.
+ *
+ * @author groupKilo
+ */
+public class SummaryServiceTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private volatile boolean failing;
+    private volatile boolean reviewsDown;
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    private SummaryService.LookupFactory providers = new SummaryService.LookupFactory() {
+        @Override
+        public List<Lookup> create(final String barcodeNo, String barcodeType, ItemInfo info) {
+            List<Lookup> lookups = new ArrayList<Lookup>();
+            lookups.add(new Lookup(barcodeNo, barcodeType, info) {
+                @Override
+                public void run() {
+                    queries.incrementAndGet();
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (failing) throw new IllegalStateException("provider down");
+                    fillContent(null);
+                }
+
+                @Override
+                protected void fillContent(String requestURL) {
+                    if (Barcode.ISBN.equals(barcodeType)) {
+                        info.setTitle("Item " + barcodeNo);
+                        info.addDescription("Description of item " + barcodeNo + ".");
+                    }
+                }
+            });
+            if (reviewsDown) {
+                // A second provider that cannot be reached, leaving the item partial
+                lookups.add(new Lookup(barcodeNo, barcodeType, info) {
+                    @Override
+                    public void run() {
+                        failed(new IOException("Connection refused"));
+                    }
+
+                    @Override
+                    protected void fillContent(String requestURL) {
+                    }
+                });
+            }
+            return lookups;
+        }
+    };
+
+    private SummaryService service = service(SummaryService.DEFAULT_CACHE_TTL_MILLIS);
+
+    private SummaryService service(long refreshMillis) {
+        return service(refreshMillis, new AdmissionController(SummaryService.DEFAULT_MAX_IN_FLIGHT,
+                SummaryService.DEFAULT_MAX_QUEUED));
+    }
+
+    private SummaryService service(long refreshMillis, AdmissionController admission) {
+        TinyLfuCache<String, EncodedSummary> cache = new TinyLfuCache<String, EncodedSummary>(1 << 20, 100,
+                refreshMillis, SummaryService.DEFAULT_CACHE_TTL_MILLIS, EncodedSummary::getWeight);
+        return new SummaryService(new LookupEngine(4, 1000), providers, Executors.newFixedThreadPool(2), cache, null,
+                admission) {
+            @Override
+            public String summarizeDescriptions(ItemInfo info) {
+                return info.getDescriptionsAsString();
+            }
+
+            @Override
+            public String summarizeReviews(ItemInfo info) {
+                return "";
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void recognisedItemIsCached() {
+        EncodedSummary first = service.summarize("9780201616224", "ISBN").join();
+        EncodedSummary second = service.summarize("9780201616224", "ISBN").join();
+
+        assertEquals("Item 9780201616224", first.getSummary().getTitle());
+        assertSame(first, second);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void spellingsOfOneBookShareTheCache() {
+        EncodedSummary isbn10 = service.summarize("020161622X", "ISBN").join();
+        EncodedSummary isbn13 = service.summarize("978-0201616224", "PRODUCT").join();
+
+        assertSame(isbn10, isbn13);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void invalidBarcodeIsNeverLookedUp() {
+        assertSame(SummaryService.INVALID_BARCODE, service.summarize("9780201616225", "ISBN").join());
+        assertSame(SummaryService.INVALID_BARCODE, service.summarize("not a barcode", "ISBN").join());
+        assertEquals(0, queries.get());
+    }
+
+    @Test
+    public void staleItemIsServedWhileOneRefreshRuns() throws InterruptedException {
+        service.shutdown();
+        service = service(0);
+        EncodedSummary first = service.summarize("9780201616224", "ISBN").join();
+
+        gate = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++)
+            assertSame(first, service.summarize("9780201616224", "ISBN").join());
+        assertEquals(1, service.getRefreshes().getInFlight());
+        gate.countDown();
+
+        for (int i = 0; i < 100 && service.getRefreshes().getInFlight() > 0; i++)
+            Thread.sleep(10);
+        assertEquals(2, queries.get());
+        assertNotSame(first, service.getCache().get(Barcode.parse("9780201616224").toString()));
+    }
+
+    @Test
+    public void unknownBarcodeIsRememberedWithoutQueryingAgain() {
+        EncodedSummary first = service.summarize("036000291452", "ISBN").join();
+        EncodedSummary second = service.summarize("036000291452", "ISBN").join();
+
+        assertSame(SummaryService.NOT_FOUND, first);
+        assertSame(SummaryService.NOT_FOUND, second);
+        assertNull(first.getSummary().getTitle());
+        assertEquals(1, queries.get());
+        assertEquals(1, service.getNegativeCache().size());
+        assertEquals(0, service.getCache().size());
+    }
+
+    @Test
+    public void failedLookupIsNotRememberedAsUnknown() {
+        failing = true;
+        service.summarize("036000291452", "ISBN").join();
+        failing = false;
+        service.summarize("036000291452", "ISBN").join();
+
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void partialItemIsServedButNotKept() {
+        reviewsDown = true;
+        EncodedSummary partial = service.summarize("9780201616224", "ISBN").join();
+
+        assertEquals("Item 9780201616224", partial.getSummary().getTitle());
+        assertEquals(0, service.getCache().size());
+
+        reviewsDown = false;
+        assertNotSame(partial, service.summarize("9780201616224", "ISBN").join());
+        assertEquals(2, queries.get());
+        assertEquals(1, service.getCache().size());
+    }
+
+    @Test
+    public void overloadDegradesThenRejectsButServesCachedItems() {
+        service.shutdown();
+        service = service(SummaryService.DEFAULT_CACHE_TTL_MILLIS, new AdmissionController(1, 1));
+        EncodedSummary cached = service.summarize("9780201616224", "ISBN").join();
+
+        gate = new CountDownLatch(1);
+        CompletableFuture<EncodedSummary> running = service.summarize("9780306406157", "ISBN");
+        CompletableFuture<EncodedSummary> queued = service.summarize("9780131103627", "ISBN");
+        CompletableFuture<EncodedSummary> rejected = service.summarize("9780262033848", "ISBN");
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertSame(cached, service.summarize("9780201616224", "ISBN").join());
+        assertEquals(1, service.getAdmission().getQueueDepth());
+
+        gate.countDown();
+        assertEquals("Item 9780306406157", running.join().getSummary().getTitle());
+        Summary degraded = queued.join().getSummary();
+        assertEquals("Item 9780131103627", degraded.getTitle());
+        assertTrue(degraded.getText().contains("Reviews are not available right now."));
+        assertNull(service.getCache().get("ISBN:9780131103627"));
+        assertEquals(1, service.getAdmission().getRejected());
+        assertEquals(1, service.getAdmission().getDegraded());
+    }
+
+    @Test
+    public void queuedRequestReportsProgressOnceAdmitted() {
+        service.shutdown();
+        service = service(SummaryService.DEFAULT_CACHE_TTL_MILLIS, new AdmissionController(1, 1));
+
+        gate = new CountDownLatch(1);
+        CompletableFuture<EncodedSummary> running = service.summarize("9780306406157", "ISBN");
+        List<Summary> partials = new CopyOnWriteArrayList<Summary>();
+        CompletableFuture<EncodedSummary> queued = service.summarize("9780131103627", "ISBN", partials::add);
+        assertEquals(1, service.getAdmission().getQueueDepth());
+        gate.countDown();
+        running.join();
+        queued.join();
+
+        assertEquals(1, partials.size());
+        assertEquals("Item 9780131103627", partials.get(0).getTitle());
+    }
+
+    @Test
+    public void progressReportsTitleThenDescription() {
+        gate = new CountDownLatch(1);
+        List<Summary> partials = new CopyOnWriteArrayList<Summary>();
+        CompletableFuture<EncodedSummary> result = service.summarize("9780201616224", "ISBN", partials::add);
+        // A second caller joins the same lookup and hears about it too
+        List<Summary> joined = new CopyOnWriteArrayList<Summary>();
+        service.summarize("020161622X", "ISBN", joined::add);
+        gate.countDown();
+        EncodedSummary summary = result.join();
+
+        assertEquals(2, partials.size());
+        assertEquals("Item 9780201616224", partials.get(0).getTitle());
+        assertTrue(partials.get(0).getText().isEmpty());
+        assertEquals(Arrays.asList("Description of item 9780201616224."), partials.get(1).getText());
+        assertEquals(partials, joined);
+        assertEquals(1, queries.get());
+
+        List<Summary> cached = new CopyOnWriteArrayList<Summary>();
+        assertSame(summary, service.summarize("9780201616224", "ISBN", cached::add).join());
+        assertTrue(cached.isEmpty());
+    }
+}
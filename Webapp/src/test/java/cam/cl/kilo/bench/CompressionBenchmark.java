@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.bench;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import cam.cl.kilo.NLP.SummaryDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CPU cost and compression ratio of gzip against SummaryDictionary for SummaryCodec payloads of
+ * different sizes. Ratios are printed once per payload size. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=cam.cl.kilo.bench.CompressionBenchmark
+ * </pre>
+ *
+ * @author groupKilo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String[] SENTENCES = {
+            "The author explains the main features of the language with many practical examples.",
+            "I really enjoyed this book and would recommend it to anyone learning to program.",
+            "The second edition has been fully revised and covers the new standard library.",
+            "It was a bit slow at the beginning, but the later chapters are excellent.",
+            "A clear introduction for students, with exercises at the end of every chapter.",
+    };
+
+    /**
+     * Sentences in the summary; MEAD is asked for 5 per section, and 2 is an item with no reviews
+     */
+    @Param({"2", "10", "40"})
+    public int sentences;
+
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        ItemInfo info = new ItemInfo();
+        info.setTitle("ML for the Working Programmer");
+        info.addAuthor("Lawrence C. Paulson");
+        StringBuilder descriptions = new StringBuilder();
+        StringBuilder reviews = new StringBuilder();
+        for (int i = 0; i < sentences; i++)
+            (i % 2 == 0 ? descriptions : reviews).append(SENTENCES[i % SENTENCES.length])
+                    .append(" Sentence ").append(i).append(". ");
+        payload = SummaryCodec.encode(new Summary(info, descriptions.toString(), reviews.toString()));
+        compressed = SummaryDictionary.compress(payload);
+        System.out.printf("%n%d sentences: %d bytes, gzip %d bytes, dictionary %d bytes%n",
+                sentences, payload.length, gzip().length, compressed.length);
+    }
+
+    @Benchmark
+    public byte[] gzip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(payload);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] dictionaryCompress() {
+        return SummaryDictionary.compress(payload);
+    }
+
+    @Benchmark
+    public byte[] dictionaryDecompress() throws IOException {
+        return SummaryDictionary.decompress(compressed);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.bench;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.lookup.AmznItemLookup;
+import cam.cl.kilo.lookup.Barcode;
+import cam.cl.kilo.lookup.GoodReadsLookup;
+import cam.cl.kilo.lookup.OMDBLookup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the providers' responses into an ItemInfo by pull parsing, as the Lookups do, with
+ * building a DOM and searching it by tag name, as they used to. Uses the sample responses in
+ * src/test/resources/responses; the GC profiler reports the bytes allocated per operation.
+ * Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=cam.cl.kilo.bench.ProviderXmlBenchmark
+ * </pre>
+ *
+ * @author groupKilo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderXmlBenchmark {
+
+    private byte[] amazon;
+    private byte[] goodReads;
+    private byte[] omdb;
+
+    @Setup
+    public void setup() throws IOException {
+        amazon = read("amazon.xml");
+        goodReads = read("goodreads.xml");
+        omdb = read("omdb.xml");
+    }
+
+    private static byte[] read(String name) throws IOException {
+        InputStream in = ProviderXmlBenchmark.class.getResourceAsStream("/responses/" + name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; )
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static Document dom(byte[] xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public ItemInfo amazonDom() throws Exception {
+        ItemInfo info = new ItemInfo();
+        Document doc = dom(amazon);
+        Node itemAttrNode = doc.getElementsByTagName("ItemAttributes").item(0);
+        for (Node child = itemAttrNode.getFirstChild(); child != null; child = child.getNextSibling())
+            if (child.getNodeName().equalsIgnoreCase("Author"))
+                info.addAuthor(child.getTextContent());
+        info.setTitle(doc.getElementsByTagName("Title").item(0).getTextContent());
+        info.addDescription(doc.getElementsByTagName("Content").item(0).getTextContent());
+        return info;
+    }
+
+    @Benchmark
+    public ItemInfo amazonStax() throws XMLStreamException {
+        ItemInfo info = new ItemInfo();
+        new AmznItemLookup("9780764570681", Barcode.ISBN, info).readItem(new ByteArrayInputStream(amazon));
+        return info;
+    }
+
+    @Benchmark
+    public String goodReadsDom() throws Exception {
+        ItemInfo info = new ItemInfo();
+        Document doc = dom(goodReads);
+        Node authorNode = doc.getElementsByTagName("author").item(0);
+        for (Node child = authorNode.getFirstChild(); child != null; child = child.getNextSibling())
+            if (child.getNodeName().equalsIgnoreCase("name"))
+                info.addAuthor(child.getTextContent());
+        info.setTitle(doc.getElementsByTagName("title").item(0).getTextContent());
+        info.addDescription(doc.getElementsByTagName("description").item(0).getTextContent());
+        return doc.getElementsByTagName("reviews_widget").item(0).getTextContent();
+    }
+
+    @Benchmark
+    public String goodReadsStax() throws XMLStreamException {
+        ItemInfo info = new ItemInfo();
+        return new GoodReadsLookup("9780764570681", Barcode.ISBN, info).readBook(new ByteArrayInputStream(goodReads));
+    }
+
+    @Benchmark
+    public ItemInfo omdbDom() throws Exception {
+        ItemInfo info = new ItemInfo();
+        Document doc = dom(omdb);
+        NamedNodeMap movie = doc.getElementsByTagName("movie").item(0).getAttributes();
+        info.setTitle(movie.getNamedItem("title").getNodeValue());
+        info.addAuthor(movie.getNamedItem("director").getNodeValue());
+        info.addAuthor(movie.getNamedItem("actors").getNodeValue());
+        info.addDescription(movie.getNamedItem("plot").getNodeValue());
+        return info;
+    }
+
+    @Benchmark
+    public ItemInfo omdbStax() throws XMLStreamException {
+        ItemInfo info = new ItemInfo();
+        new OMDBLookup("0097363284875", Barcode.UPC, info).readMovie(new ByteArrayInputStream(omdb));
+        return info;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProviderXmlBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.bench;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.NLP.Summary;
+import cam.cl.kilo.NLP.SummaryCodec;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Base64-encoded Java serialization of a Summary with SummaryCodec, for a Summary about
+ * the size MEAD produces (a dozen description sentences and as many review sentences).
+ * Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=cam.cl.kilo.bench.SummaryCodecBenchmark
+ * </pre>
+ *
+ * @author groupKilo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SummaryCodecBenchmark {
+
+    private Summary summary;
+    private byte[] base64;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        ItemInfo info = new ItemInfo();
+        info.setTitle("ML for the Working Programmer");
+        info.addAuthor("Lawrence C. Paulson");
+        StringBuilder descriptions = new StringBuilder();
+        StringBuilder reviews = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            descriptions.append("The author describes the main features of the new Standard Library, sentence ")
+                    .append(i).append(". ");
+            reviews.append("A clear and thorough introduction to functional programming, review sentence ")
+                    .append(i).append(". ");
+        }
+        summary = new Summary(info, descriptions.toString(), reviews.toString());
+        base64 = javaSerializationBase64();
+        binary = summaryCodec();
+        System.out.printf("Java serialization + Base64: %d bytes, SummaryCodec: %d bytes%n",
+                base64.length, binary.length);
+    }
+
+    @Benchmark
+    public byte[] javaSerializationBase64() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(summary);
+        oos.close();
+        return Base64.encodeBase64(baos.toByteArray());
+    }
+
+    @Benchmark
+    public byte[] summaryCodec() {
+        return SummaryCodec.encode(summary);
+    }
+
+    @Benchmark
+    public Object decodeJavaSerializationBase64() throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.decodeBase64(base64)));
+        return ois.readObject();
+    }
+
+    @Benchmark
+    public Summary decodeSummaryCodec() throws IOException {
+        return SummaryCodec.decode(binary);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SummaryCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author groupKilo
+ */
+public class SummaryStoreTest {
+
+    private static final long MAX_AGE = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void putAndGet() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        store.put("ISBN:2", bytes("second"));
+        store.put("ISBN:1", bytes("updated"));
+
+        assertArrayEquals(bytes("updated"), store.get("ISBN:1"));
+        assertArrayEquals(bytes("second"), store.get("ISBN:2"));
+        assertNull(store.get("ISBN:3"));
+        assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void valuesAreLatestPerKey() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        store.put("ISBN:2", bytes("second"));
+        store.put("ISBN:1", bytes("updated"));
+
+        Set<String> values = new HashSet<String>();
+        for (byte[] value : store.values())
+            values.add(new String(value, StandardCharsets.UTF_8));
+        assertEquals(new HashSet<String>(Arrays.asList("updated", "second")), values);
+        store.close();
+    }
+
+    @Test
+    public void survivesReopen() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        store.close();
+
+        store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        assertArrayEquals(bytes("first"), store.get("ISBN:1"));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void rebuildsIndexAfterUncleanShutdown() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        store.put("ISBN:2", bytes("second"));
+        new File(folder.getRoot(), "summaries.idx").delete();
+        store.close();
+
+        store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        assertArrayEquals(bytes("first"), store.get("ISBN:1"));
+        assertArrayEquals(bytes("second"), store.get("ISBN:2"));
+        store.close();
+    }
+
+    @Test
+    public void dropsTornTail() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        long intact = store.getLogLength();
+        store.put("ISBN:2", bytes("second"));
+        store.close();
+
+        RandomAccessFile log = new RandomAccessFile(new File(folder.getRoot(), "summaries.log"), "rw");
+        log.setLength(log.length() - 3);
+        log.close();
+
+        store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        assertEquals(intact, store.getLogLength());
+        assertArrayEquals(bytes("first"), store.get("ISBN:1"));
+        assertNull(store.get("ISBN:2"));
+        store.put("ISBN:2", bytes("again"));
+        assertArrayEquals(bytes("again"), store.get("ISBN:2"));
+        store.close();
+    }
+
+    @Test
+    public void expiredValuesAreNotReturned() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), -1);
+        store.put("ISBN:1", bytes("first"));
+
+        assertNull(store.get("ISBN:1"));
+        store.close();
+    }
+
+    @Test
+    public void compactionKeepsLatestValues() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 10; i++)
+                store.put("ISBN:" + i, bytes("round " + round));
+        long before = store.getLogLength();
+
+        store.compact();
+
+        assertTrue(store.getLogLength() < before / 4);
+        for (int i = 0; i < 10; i++)
+            assertArrayEquals(bytes("round 4"), store.get("ISBN:" + i));
+        store.close();
+
+        store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        assertEquals(10, store.size());
+        assertArrayEquals(bytes("round 4"), store.get("ISBN:9"));
+        store.close();
+    }
+
+    @Test
+    public void overwrittenLogIsCompactedInTheBackground() throws IOException {
+        char[] filler = new char[20000];
+        Arrays.fill(filler, 'x');
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        for (int round = 0; round < 10; round++)
+            for (int i = 0; i < 10; i++)
+                store.put("ISBN:" + i, bytes(round + new String(filler)));
+        // Closing waits for the compaction that the puts scheduled
+        store.close();
+
+        // Less than the values written, however many records the compaction was scheduled behind
+        store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        assertTrue(store.getLogLength() < 100 * filler.length);
+        assertArrayEquals(bytes(9 + new String(filler)), store.get("ISBN:3"));
+        store.close();
+    }
+
+    @Test
+    public void putAfterCloseFails() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.close();
+        try {
+            store.put("ISBN:1", bytes("first"));
+            fail("Put into a closed store");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void recoversMoreKeysThanTheInitialIndexHolds() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        for (int i = 0; i < 5000; i++)
+            store.put("ISBN:" + i, bytes("value " + i));
+        // A copy taken while the store is open looks like one left by a crash
+        File crashed = folder.newFolder("crashed");
+        for (String name : new String[]{"summaries.log", "summaries.idx"})
+            Files.copy(new File(folder.getRoot(), name).toPath(), new File(crashed, name).toPath());
+        store.close();
+
+        store = SummaryStore.open(crashed, MAX_AGE);
+        assertEquals(5000, store.size());
+        for (int i = 0; i < 5000; i += 97)
+            assertArrayEquals(bytes("value " + i), store.get("ISBN:" + i));
+        store.close();
+    }
+
+    @Test
+    public void compactionDropsExpiredValues() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        store.put("ISBN:1", bytes("first"));
+        store.close();
+
+        store = SummaryStore.open(folder.getRoot(), -1);
+        store.compact();
+        assertEquals(0, store.getLogLength());
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    @Test
+    public void indexGrows() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        for (int i = 0; i < 5000; i++)
+            store.put("ISBN:" + i, bytes("value " + i));
+
+        assertEquals(5000, store.size());
+        for (int i = 0; i < 5000; i += 97)
+            assertArrayEquals(bytes("value " + i), store.get("ISBN:" + i));
+        store.close();
+    }
+
+    @Test
+    public void directoryIsLocked() throws IOException {
+        SummaryStore store = SummaryStore.open(folder.getRoot(), MAX_AGE);
+        try {
+            SummaryStore.open(folder.getRoot(), MAX_AGE);
+            fail("Second store opened on a locked directory");
+        } catch (IOException expected) {
+        } finally {
+            store.close();
+        }
+    }
+}
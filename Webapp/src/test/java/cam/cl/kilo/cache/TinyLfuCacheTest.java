@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class TinyLfuCacheTest {
+
+    private AtomicLong now = new AtomicLong();
+
+    private TinyLfuCache<String, String> cache(long maximumWeight) {
+        return new TinyLfuCache<String, String>(maximumWeight, 100, 1000, String::length, now::get);
+    }
+
+    @Test
+    public void hitAndMiss() {
+        TinyLfuCache<String, String> cache = cache(1000);
+        cache.put("ISBN:1", "summary");
+
+        assertEquals("summary", cache.get("ISBN:1"));
+        assertNull(cache.get("ISBN:2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void entriesExpire() {
+        TinyLfuCache<String, String> cache = cache(1000);
+        cache.put("ISBN:1", "summary");
+        cache.put("ISBN:2", "summary", 5000);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+
+        assertNull(cache.get("ISBN:1"));
+        assertNotNull(cache.get("ISBN:2"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void entriesGoStaleBeforeExpiring() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<String, String>(1000, 100, 100, 1000,
+                String::length, now::get);
+        cache.put("ISBN:1", "summary");
+        assertFalse(cache.isStale("ISBN:1"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(101));
+        assertTrue(cache.isStale("ISBN:1"));
+        assertEquals("summary", cache.get("ISBN:1"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(900));
+        assertFalse(cache.isStale("ISBN:1"));
+        assertNull(cache.get("ISBN:1"));
+    }
+
+    @Test
+    public void staysWithinWeight() {
+        TinyLfuCache<String, String> cache = cache(100);
+        for (int i = 0; i < 50; i++)
+            cache.put("ISBN:" + i, "0123456789");
+
+        assertTrue(cache.weightedSize() <= 100);
+        assertTrue(cache.getEvictionCount() >= 40);
+    }
+
+    @Test
+    public void oversizedValueIsNotCached() {
+        TinyLfuCache<String, String> cache = cache(5);
+        cache.put("ISBN:1", "0123456789");
+
+        assertNull(cache.get("ISBN:1"));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void popularEntriesSurviveScan() {
+        TinyLfuCache<String, String> cache = cache(200);
+        for (int i = 0; i < 10; i++)
+            cache.put("hot:" + i, "0123456789");
+        for (int round = 0; round < 5; round++)
+            for (int i = 0; i < 10; i++)
+                cache.get("hot:" + i);
+
+        for (int i = 0; i < 1000; i++)
+            cache.put("cold:" + i, "0123456789");
+
+        int survivors = 0;
+        for (int i = 0; i < 10; i++)
+            if (cache.get("hot:" + i) != null) survivors++;
+        assertEquals(10, survivors);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class AdmissionControllerTest {
+
+    private final AdmissionController admission = new AdmissionController(2, 1);
+
+    @Test
+    public void admitsThenQueuesThenRejects() {
+        CompletableFuture<AdmissionController.Permit> first = admission.acquire();
+        CompletableFuture<AdmissionController.Permit> second = admission.acquire();
+        CompletableFuture<AdmissionController.Permit> third = admission.acquire();
+        CompletableFuture<AdmissionController.Permit> fourth = admission.acquire();
+
+        assertFalse(first.join().isDegraded());
+        assertFalse(second.join().isDegraded());
+        assertFalse(third.isDone());
+        assertTrue(fourth.isCompletedExceptionally());
+        assertTrue(AdmissionController.isRejection(fourth.handle((p, t) -> t).join()));
+
+        assertEquals(2, admission.getInFlight());
+        assertEquals(1, admission.getQueueDepth());
+        assertEquals(1, admission.getRejected());
+    }
+
+    @Test
+    public void releaseHandsPermitToQueue() {
+        AdmissionController.Permit first = admission.acquire().join();
+        admission.acquire();
+        CompletableFuture<AdmissionController.Permit> queued = admission.acquire();
+
+        first.release();
+        first.release();
+
+        assertTrue(queued.join().isDegraded());
+        assertEquals(2, admission.getInFlight());
+        assertEquals(0, admission.getQueueDepth());
+        assertEquals(1, admission.getDegraded());
+
+        queued.join().release();
+        assertEquals(1, admission.getInFlight());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class CircuitBreakerTest {
+
+    private static final long SLOW_MILLIS = 100;
+    private static final long OPEN_MILLIS = 1000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker("GoodReads", 3, SLOW_MILLIS, OPEN_MILLIS, now::get);
+    private final List<CircuitBreaker.State> transitions = new ArrayList<CircuitBreaker.State>();
+
+    {
+        breaker.addListener((b, from, to) -> transitions.add(to));
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(0);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getRejected());
+    }
+
+    @Test
+    public void slowCallsCountAsFailures() {
+        for (int i = 0; i < 3; i++)
+            breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS + 1));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenProbeClosesOrReopens() {
+        open();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        assertTrue(breaker.tryAcquire());
+        assertFalse("only one probe at a time", breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(0);
+        assertTrue(breaker.tryAcquire());
+
+        assertEquals(Arrays.asList(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+                CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED),
+                transitions);
+        assertEquals(2, breaker.getOpened());
+    }
+
+    @Test
+    public void lostProbeIsReplaced() {
+        open();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        assertTrue(breaker.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++)
+            breaker.onFailure();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class JobStoreTest {
+
+    private static final long RETAIN_MILLIS = 1000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final JobStore<String, String> jobs = new JobStore<String, String>(2, RETAIN_MILLIS, now::get);
+    private final AtomicInteger starts = new AtomicInteger();
+    private CompletableFuture<String> pending = new CompletableFuture<String>();
+
+    private Supplier<CompletableFuture<String>> work = () -> {
+        starts.incrementAndGet();
+        return pending;
+    };
+
+    @Test
+    public void sameKeySharesOneJob() {
+        JobStore.Job<String, String> first = jobs.submit("ISBN:123", work);
+        JobStore.Job<String, String> second = jobs.submit("ISBN:123", work);
+
+        assertSame(first, second);
+        assertEquals(1, starts.get());
+        assertSame(first, jobs.get(first.getId()));
+    }
+
+    @Test
+    public void finishedJobIsKeptThenForgotten() {
+        JobStore.Job<String, String> job = jobs.submit("ISBN:123", work);
+        pending.complete("summary");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(RETAIN_MILLIS));
+        assertEquals("summary", jobs.get(job.getId()).getResult().join());
+        assertSame(job, jobs.submit("ISBN:123", work));
+
+        now.addAndGet(1);
+        assertNull(jobs.get(job.getId()));
+        pending = new CompletableFuture<String>();
+        assertNotEquals(job.getId(), jobs.submit("ISBN:123", work).getId());
+        assertEquals(2, starts.get());
+    }
+
+    @Test
+    public void workStartsOutsideTheLock() throws Exception {
+        // A poll from another thread while the work is starting must not wait for it
+        JobStore.Job<String, String> job = jobs.submit("ISBN:123", () -> {
+            try {
+                assertEquals(1, (int) CompletableFuture.supplyAsync(jobs::size).get(1, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return pending;
+        });
+        pending.complete("summary");
+
+        assertEquals("summary", job.getResult().join());
+    }
+
+    @Test
+    public void workThatThrowsFailsItsJob() {
+        JobStore.Job<String, String> job = jobs.submit("ISBN:123", () -> {
+            throw new IllegalStateException("provider down");
+        });
+
+        assertTrue(job.getResult().isCompletedExceptionally());
+        assertNotSame(job, jobs.submit("ISBN:123", work));
+    }
+
+    @Test
+    public void failedJobIsStartedAfresh() {
+        JobStore.Job<String, String> job = jobs.submit("ISBN:123", work);
+        pending.completeExceptionally(new IllegalStateException("provider down"));
+        pending = new CompletableFuture<String>();
+
+        assertNotEquals(job.getId(), jobs.submit("ISBN:123", work).getId());
+        assertEquals(2, starts.get());
+    }
+
+    @Test
+    public void runningJobsAreNeverEvicted() {
+        jobs.submit("ISBN:1", work);
+        jobs.submit("ISBN:2", work);
+
+        assertNull(jobs.submit("ISBN:3", work));
+        assertEquals(1, jobs.getRejected());
+        assertEquals(2, jobs.size());
+    }
+
+    @Test
+    public void oldestFinishedJobMakesRoom() {
+        JobStore.Job<String, String> first = jobs.submit("ISBN:1", () -> CompletableFuture.completedFuture("one"));
+        JobStore.Job<String, String> second = jobs.submit("ISBN:2", work);
+
+        assertNotNull(jobs.submit("ISBN:3", work));
+        assertNull(jobs.get(first.getId()));
+        assertSame(second, jobs.get(second.getId()));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class SingleFlightTest {
+
+    private SingleFlight<String, String> flights = new SingleFlight<String, String>();
+    private AtomicInteger loads = new AtomicInteger();
+    private CompletableFuture<String> pending = new CompletableFuture<String>();
+
+    private Supplier<CompletableFuture<String>> loader = () -> {
+        loads.incrementAndGet();
+        return pending;
+    };
+
+    @Test
+    public void concurrentCallersShareOneComputation() {
+        CompletableFuture<String> first = flights.execute("ISBN:123", loader);
+        CompletableFuture<String> second = flights.execute("ISBN:123", loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, flights.getCoalesced());
+
+        pending.complete("summary");
+        assertEquals("summary", second.join());
+        assertEquals(0, flights.getInFlight());
+    }
+
+    @Test
+    public void differentKeysRunSeparately() {
+        flights.execute("ISBN:123", loader);
+        flights.execute("UPC:123", loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(2, flights.getInFlight());
+    }
+
+    @Test
+    public void completedKeyIsComputedAgain() {
+        flights.execute("ISBN:123", loader);
+        pending.complete("summary");
+        pending = new CompletableFuture<String>();
+        flights.execute("ISBN:123", loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    public void failureIsSharedAndForgotten() {
+        CompletableFuture<String> first = flights.execute("ISBN:123", loader);
+        pending.completeExceptionally(new IllegalStateException("provider down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(0, flights.getInFlight());
+    }
+}
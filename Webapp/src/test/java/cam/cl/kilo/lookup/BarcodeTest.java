@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.lookup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class BarcodeTest {
+
+    @Test
+    public void isbn10BecomesIsbn13() {
+        assertEquals("ISBN:9780201616224", Barcode.parse("020161622X").toString());
+        assertEquals("ISBN:9780201616224", Barcode.parse("0-201-61622-x").toString());
+        assertEquals("ISBN:9780385354301", Barcode.parse("0385354304").toString());
+    }
+
+    @Test
+    public void separatorsAreStripped() {
+        assertEquals(Barcode.parse("9780764570681"), Barcode.parse("978-0764570681"));
+        assertEquals(Barcode.parse("9780764570681"), Barcode.parse(" 978 0 7645 7068 1 "));
+    }
+
+    @Test
+    public void typeIsInferredFromDigits() {
+        assertEquals(Barcode.ISBN, Barcode.parse("9791032300824").getType());
+        assertEquals(Barcode.EAN, Barcode.parse("5012345678900").getType());
+        assertEquals(Barcode.EAN, Barcode.parse("96385074").getType());
+        assertEquals("UPC:036000291452", Barcode.parse("036000291452").toString());
+        assertEquals("UPC:036000291452", Barcode.parse("0036000291452").toString());
+    }
+
+    @Test
+    public void badCheckDigitsAreRejected() {
+        assertFalse(Barcode.isValid("0201616221"));
+        assertFalse(Barcode.isValid("9780201616225"));
+        assertFalse(Barcode.isValid("036000291453"));
+        assertFalse(Barcode.isValid("96385075"));
+    }
+
+    @Test
+    public void garbageIsRejected() {
+        assertFalse(Barcode.isValid(null));
+        assertFalse(Barcode.isValid(""));
+        assertFalse(Barcode.isValid("http://example.com"));
+        assertFalse(Barcode.isValid("12345"));
+        assertFalse(Barcode.isValid("97802016162X4"));
+        assertTrue(Barcode.isValid("144932391X"));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.lookup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author groupKilo
+ */
+public class HttpFetcherTest {
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private HttpFetcher fetcher;
+    private String base;
+    private final Set<InetSocketAddress> clients =
+            Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/xml", exchange -> respond(exchange, 200, "<item><Title>Dune</Title></item>"));
+        server.createContext("/html", exchange -> respond(exchange, 200,
+                "<html><body><a href=\"review/1\">Review</a></body></html>"));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "no such item"));
+        server.createContext("/broken", exchange -> respond(exchange, 503, "busy"));
+        // Every request answers at once, except the fifth, which takes 2s
+        final AtomicInteger calls = new AtomicInteger();
+        server.createContext("/flaky", exchange -> {
+            if (calls.incrementAndGet() == 5) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            respond(exchange, 200, "<item><Title>Dune</Title></item>");
+        });
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        fetcher = new HttpFetcher(4, 8, 1000, 1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fetcher.close();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        clients.add(exchange.getRemoteAddress());
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    @Test
+    public void sequentialRequestsReuseOneConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("<item><Title>Dune</Title></item>", new String(fetcher.get(base + "/xml"), "UTF-8"));
+        }
+
+        assertEquals(1, clients.size());
+        assertEquals(5, fetcher.getRequests("127.0.0.1"));
+        assertEquals(5 * "<item><Title>Dune</Title></item>".length(), fetcher.getBytes("127.0.0.1"));
+        assertEquals(0, fetcher.getPoolStats().getLeased());
+        assertEquals(1, fetcher.getPoolStats().getAvailable());
+    }
+
+    @Test
+    public void htmlLinksResolveAgainstThePage() throws Exception {
+        org.jsoup.nodes.Document page = fetcher.getHtml(base + "/html");
+
+        assertEquals(base + "/review/1", page.select("a").first().absUrl("href"));
+    }
+
+    @Test
+    public void errorStatusesFailAndReleaseTheConnection() throws Exception {
+        try {
+            fetcher.get(base + "/missing");
+            fail("404 should not be returned as a body");
+        } catch (FileNotFoundException expected) {
+        }
+        try {
+            fetcher.get(base + "/broken");
+            fail("503 should not be returned as a body");
+        } catch (FileNotFoundException e) {
+            fail("503 is not a missing item");
+        } catch (IOException expected) {
+        }
+        fetcher.get(base + "/xml");
+
+        assertEquals(2, fetcher.getFailures("127.0.0.1"));
+        assertEquals(1, clients.size());
+        assertEquals(0, fetcher.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void slowRequestIsHedgedAndTheLoserAborted() throws Exception {
+        Hedging hedging = new Hedging(1.0, 16, 4);
+        for (int i = 0; i < 4; i++) {
+            fetcher.get(base + "/flaky", hedging, "Flaky");
+        }
+        assertEquals(0, hedging.getHedges("Flaky"));
+        long delay = hedging.getDelayNanos("Flaky");
+
+        long start = System.currentTimeMillis();
+        byte[] body = fetcher.get(base + "/flaky", hedging, "Flaky");
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("<item><Title>Dune</Title></item>", new String(body, "UTF-8"));
+        assertTrue("Took " + elapsed + "ms", elapsed < 1000);
+        assertEquals(1, hedging.getHedges("Flaky"));
+        assertEquals(1, hedging.getWins("Flaky"));
+        // The slow request's connection was aborted rather than left waiting for its answer
+        assertEquals(0, fetcher.getPoolStats().getLeased());
+        // Recorded from the original request, which had waited out the delay before the hedge answered
+        assertTrue(hedging.getDelayNanos("Flaky") > delay);
+    }
+
+    @Test
+    public void failedRequestsCountTowardsTheDelay() throws Exception {
+        Hedging hedging = new Hedging(1.0, 16, 4);
+        for (int i = 0; i < 4; i++) {
+            try {
+                fetcher.get(base + "/broken", hedging, "Broken");
+                fail("503 should not be returned as a body");
+            } catch (IOException expected) {
+            }
+        }
+
+        assertTrue(hedging.getDelayNanos("Broken") > 0);
+    }
+
+    @Test
+    public void unhedgedRequestIsSentOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            fetcher.get(base + "/xml", null, "Fast");
+        }
+
+        assertEquals(5, fetcher.getRequests("127.0.0.1"));
+    }
+}
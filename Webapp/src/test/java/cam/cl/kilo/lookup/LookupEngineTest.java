@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cam.cl.kilo.lookup;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import cam.cl.kilo.concurrent.CircuitBreaker;
+import cam.cl.kilo.concurrent.CircuitBreakers;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class LookupEngineTest {
+
+    private LookupEngine engine = new LookupEngine(4, 300);
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void waitsForAllLookups() {
+        ItemInfo info = new ItemInfo();
+        ItemInfo result = engine.run(info, Arrays.asList(
+                new StubLookup(info, 0, "Title", "First description"),
+                new StubLookup(info, 50, null, "Second description")));
+
+        assertEquals("Title", result.getTitle());
+        assertEquals(2, result.getDescriptions().size());
+        assertFalse(result.isPartial());
+    }
+
+    @Test
+    public void returnsPartialInfoAtDeadline() {
+        ItemInfo info = new ItemInfo();
+        long start = System.currentTimeMillis();
+        ItemInfo result = engine.run(info, Arrays.asList(
+                new StubLookup(info, 0, "Title", "Fast description"),
+                new StubLookup(info, 5000, null, "Slow description")));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Took " + elapsed + "ms", elapsed < 2000);
+        assertEquals("Title", result.getTitle());
+        assertEquals(Collections.singletonList("Fast description"), result.getDescriptions());
+        assertTrue(result.isPartial());
+    }
+
+    @Test
+    public void failingLookupDoesNotBlock() {
+        ItemInfo info = new ItemInfo();
+        Lookup failing = new StubLookup(info, 0, null, null) {
+            @Override
+            public void run() {
+                throw new IllegalStateException("provider down");
+            }
+        };
+        long start = System.currentTimeMillis();
+        ItemInfo result = engine.run(info, Collections.singletonList(failing));
+
+        assertTrue(System.currentTimeMillis() - start < 300);
+        assertNull(result.getTitle());
+        assertTrue(result.isPartial());
+    }
+
+    @Test
+    public void dependentLookupStartsOnceFieldIsPublished() {
+        final ItemInfo info = new ItemInfo();
+        Lookup provider = new StubLookup(info, 0, "Title", null) {
+            @Override
+            public void run() {
+                info.setTitle("Title");
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                info.addDescription("Provider description");
+            }
+        };
+        Lookup dependent = new StubLookup(info, 0, null, "Dependent description") {
+            @Override
+            public Set<ItemInfo.Field> getRequiredFields() {
+                return EnumSet.of(ItemInfo.Field.TITLE);
+            }
+        };
+
+        ItemInfo result = engine.run(info, Arrays.asList(dependent, provider));
+
+        assertEquals(Arrays.asList("Dependent description", "Provider description"), result.getDescriptions());
+    }
+
+    @Test
+    public void unsatisfiedDependencyDoesNotWaitForDeadline() {
+        ItemInfo info = new ItemInfo();
+        Lookup dependent = new StubLookup(info, 0, null, "Dependent description") {
+            @Override
+            public Set<ItemInfo.Field> getRequiredFields() {
+                return EnumSet.of(ItemInfo.Field.TITLE);
+            }
+        };
+        long start = System.currentTimeMillis();
+        ItemInfo result = engine.run(info, Arrays.asList(dependent, new StubLookup(info, 0, null, "Other")));
+
+        assertTrue(System.currentTimeMillis() - start < 300);
+        assertEquals(Collections.singletonList("Other"), result.getDescriptions());
+    }
+
+    @Test
+    public void unreachableProviderIsSkippedOnceItsBreakerOpens() {
+        final AtomicInteger calls = new AtomicInteger();
+        engine.getBreakers().put(new CircuitBreaker("Unreachable", 2, 1000, 60000));
+        class Unreachable extends StubLookup {
+            Unreachable(ItemInfo info) {
+                super(info, 0, null, null);
+            }
+
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+                failed(new IOException("Connection refused"));
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            ItemInfo info = new ItemInfo();
+            ItemInfo result = engine.run(info, Arrays.asList(
+                    new StubLookup(info, 0, "Title", "Description"), new Unreachable(info)));
+            assertEquals("Title", result.getTitle());
+            assertTrue(result.isPartial());
+        }
+        assertEquals(2, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, engine.getBreakers().get("Unreachable").getState());
+        assertEquals(CircuitBreaker.State.CLOSED, engine.getBreakers().get("StubLookup").getState());
+    }
+
+    @Test
+    public void onlyTheApiRequestCountsAsASlowCall() {
+        engine.getBreakers().put(new CircuitBreaker("Reviewing", 1, 50, 60000));
+        // The API answers in 1ms, then the Lookup takes 100ms gathering reviews
+        class Reviewing extends StubLookup {
+            Reviewing(ItemInfo info) {
+                super(info, 100, "Title", "Description");
+            }
+
+            @Override
+            public long getRequestNanos() {
+                return 1000000;
+            }
+        }
+
+        for (int i = 0; i < 2; i++) {
+            ItemInfo info = new ItemInfo();
+            assertFalse(engine.run(info, Collections.singletonList(new Reviewing(info))).isPartial());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, engine.getBreakers().get("Reviewing").getState());
+    }
+
+    @Test
+    public void hedgingIsOffUnlessConfigured() {
+        assertNull(engine.getHedging());
+    }
+
+    @Test
+    public void hedgesStayWithinBudget() {
+        Hedging hedging = new Hedging(0.1, 16, 1);
+        int hedges = 0;
+        for (int i = 0; i < 100; i++) {
+            hedging.onRequest();
+            if (hedging.tryHedge("Amazon")) hedges++;
+        }
+        assertEquals(10, hedges, 1);
+    }
+
+    @Test
+    public void noLookups() {
+        assertTrue(engine.run(new ItemInfo(), Collections.<Lookup>emptyList()).getDescriptions().isEmpty());
+    }
+
+    /**
+     * Lookup which sleeps, then fills in a fixed title and description
+     */
+    static class StubLookup extends Lookup {
+
+        private final long delay;
+        private final String title;
+        private final String description;
+
+        StubLookup(ItemInfo info, long delay, String title, String description) {
+            super("", "ISBN", info);
+            this.delay = delay;
+            this.title = title;
+            this.description = description;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            fillContent(null);
+        }
+
+        @Override
+        protected void fillContent(String requestURL) {
+            if (title != null) info.setTitle(title);
+            if (description != null) info.addDescription(description);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.lookup;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the sample responses in src/test/resources/responses, which follow each provider's layout
+ *
+ * @author groupKilo
+ */
+public class ProviderResponseTest {
+
+    private static InputStream response(String name) {
+        return ProviderResponseTest.class.getResourceAsStream("/responses/" + name);
+    }
+
+    private static InputStream xml(String xml) throws Exception {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void readsAmazonItem() throws Exception {
+        ItemInfo info = new ItemInfo();
+        new AmznItemLookup("9780764570681", Barcode.ISBN, info).readItem(response("amazon.xml"));
+
+        assertEquals("C For Dummies", info.getTitle());
+        assertEquals(Collections.singletonList("Dan Gookin"), info.getAuthors());
+        assertEquals(1, info.getDescriptions().size());
+        assertTrue(info.getDescriptions().get(0).startsWith("<ul><li>while C++ programming"));
+    }
+
+    @Test
+    public void readsGoodReadsBookButNotSimilarBooks() throws Exception {
+        ItemInfo info = new ItemInfo();
+        GoodReadsLookup lookup = new GoodReadsLookup("9780764570681", Barcode.ISBN, info);
+        String widget = lookup.readBook(response("goodreads.xml"));
+
+        assertEquals("C for Dummies", info.getTitle());
+        assertEquals(Collections.singletonList("Dan Gookin"), info.getAuthors());
+        assertTrue(info.getDescriptions().get(0).startsWith("while C++ programming"));
+        assertTrue(lookup.extract(widget).startsWith("https://www.goodreads.com/api/reviews_widget_iframe?"));
+    }
+
+    @Test
+    public void readsOmdbMovie() throws Exception {
+        ItemInfo info = new ItemInfo();
+        info.setTitle("Titanic");
+        new OMDBLookup("0097363284875", Barcode.UPC, info).readMovie(response("omdb.xml"));
+
+        assertEquals("Titanic", info.getTitle());
+        assertEquals(Arrays.asList("James Cameron", "Leonardo DiCaprio, Kate Winslet, Billy Zane, Kathy Bates"),
+                info.getAuthors());
+        assertTrue(info.getDescriptions().get(0).startsWith("84 years later"));
+    }
+
+    @Test
+    public void unknownItemLeavesInfoEmpty() throws Exception {
+        ItemInfo info = new ItemInfo();
+        try {
+            new AmznItemLookup("9780764570681", Barcode.ISBN, info).readItem(xml(
+                    "<ItemLookupResponse><Items><Request><Errors><Error><Code>AWS.InvalidParameterValue</Code>"
+                            + "</Error></Errors></Request></Items></ItemLookupResponse>"));
+        } catch (XMLStreamException expected) {
+        }
+
+        assertNull(info.getTitle());
+        assertTrue(info.getAuthors().isEmpty());
+    }
+
+    @Test
+    public void externalDtdIsNotFetched() throws Exception {
+        ItemInfo info = new ItemInfo();
+        // Nothing listens on port 1, so resolving the DTD would fail
+        new OMDBLookup("0097363284875", Barcode.UPC, info).readMovie(xml(
+                "<?xml version=\"1.0\"?><!DOCTYPE root SYSTEM \"http://127.0.0.1:1/omdb.dtd\">"
+                        + "<root response=\"True\"><movie title=\"Heat\" year=\"1995\" genre=\"Crime\""
+                        + " director=\"Michael Mann\" actors=\"Al Pacino\" plot=\"A heist.\"/></root>"));
+
+        assertEquals("Heat", info.getTitle());
+    }
+}
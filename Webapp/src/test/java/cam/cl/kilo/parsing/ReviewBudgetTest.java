@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author groupKilo
+ */
+public class ReviewBudgetTest {
+
+    @Test
+    public void countsSentences() {
+        assertEquals(3, ReviewBudget.countSentences("Great book. Really?! Loved it..."));
+        assertEquals(1, ReviewBudget.countSentences("No full stop at the end"));
+        assertEquals(1, ReviewBudget.countSentences("Version 2.0 is out."));
+        assertEquals(0, ReviewBudget.countSentences("  "));
+    }
+
+    @Test
+    public void takesReviewsUntilEitherLimitIsMet() {
+        List<String> reviews = Arrays.asList("One. Two.", "", "Three.", "Four. Five. Six.", "Seven.");
+
+        assertEquals(Arrays.asList("One. Two.", "Three."), new ReviewBudget(1000, 3).take(reviews));
+        assertEquals(Arrays.asList("One. Two.", "Three.", "Four. Five. Six."),
+                new ReviewBudget(20, 1000).take(reviews));
+        assertEquals(4, new ReviewBudget(1000, 1000).take(reviews).size());
+    }
+
+    @Test
+    public void isMetByEnoughText() {
+        List<String> reviews = Arrays.asList("One. Two.", "Three.");
+
+        assertTrue(new ReviewBudget(1000, 3).isMet(reviews));
+        assertTrue(new ReviewBudget(15, 1000).isMet(reviews));
+        assertFalse(new ReviewBudget(1000, 4).isMet(reviews));
+    }
+}
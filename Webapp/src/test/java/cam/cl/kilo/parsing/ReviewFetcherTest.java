@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import cam.cl.kilo.lookup.HttpFetcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author groupKilo
+ */
+public class ReviewFetcherTest {
+
+    private static final String PATTERN = "div.reviewText";
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private HttpFetcher http;
+    private String base;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/review", exchange -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(50);
+                respond(exchange, "<div class=\"reviewText\">Review " + exchange.getRequestURI().getQuery() + "</div>");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.createContext("/stuck", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+                respond(exchange, "<div class=\"reviewText\">Late</div>");
+            } catch (InterruptedException | IOException e) {
+                // The client gave up
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        http = new HttpFetcher(16, 32, 1000, 10000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        http.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private String[] links(String path, int count) {
+        String[] links = new String[count];
+        for (int i = 0; i < count; i++)
+            links[i] = base + path + "?" + i;
+        return links;
+    }
+
+    private static Throwable failure(CompletableFuture<String> review) throws InterruptedException {
+        try {
+            review.get(5, TimeUnit.SECONDS);
+            fail("Review should not have been fetched");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        } catch (TimeoutException e) {
+            throw new AssertionError("Review was neither fetched nor given up");
+        }
+    }
+
+    @Test
+    public void pagesFromOneHostAreFetchedAFewAtATime() throws Exception {
+        ReviewFetcher fetcher = new ReviewFetcher(http, 8, 2, 5000);
+        List<CompletableFuture<String>> reviews = fetcher.fetch(links("/review", 12), PATTERN, 10000);
+
+        for (int i = 0; i < 12; i++)
+            assertEquals("Review " + i, reviews.get(i).get(5, TimeUnit.SECONDS).trim());
+        assertTrue("At most 2 at once but saw " + maxInFlight.get(), maxInFlight.get() <= 2);
+        assertEquals(12, fetcher.getFetched());
+        assertEquals(0, fetcher.getWaiting());
+    }
+
+    @Test
+    public void slowPageTimesOutWithoutHoldingUpTheOthers() throws Exception {
+        ReviewFetcher fetcher = new ReviewFetcher(http, 4, 4, 200);
+        List<CompletableFuture<String>> reviews = fetcher.fetch(
+                new String[] { base + "/stuck", base + "/review?1" }, PATTERN, 10000);
+
+        assertEquals("Review 1", reviews.get(1).get(5, TimeUnit.SECONDS).trim());
+        assertTrue(failure(reviews.get(0)) instanceof TimeoutException);
+        assertEquals(1, fetcher.getTimedOut());
+    }
+
+    @Test
+    public void deadlineCancelsRunningAndWaitingPages() throws Exception {
+        ReviewFetcher fetcher = new ReviewFetcher(http, 4, 2, 5000);
+        List<CompletableFuture<String>> reviews = fetcher.fetch(links("/stuck", 6), PATTERN, 200);
+
+        for (CompletableFuture<String> review : reviews)
+            assertTrue(failure(review) instanceof CancellationException);
+        assertEquals(6, fetcher.getCancelled());
+
+        // The slots were handed back, so pages from the same host can still be fetched
+        List<CompletableFuture<String>> later = fetcher.fetch(links("/review", 2), PATTERN, 10000);
+        assertEquals("Review 0", later.get(0).get(5, TimeUnit.SECONDS).trim());
+        assertEquals("Review 1", later.get(1).get(5, TimeUnit.SECONDS).trim());
+    }
+
+    @Test
+    public void pageWithoutAReviewFails() throws Exception {
+        ReviewFetcher fetcher = new ReviewFetcher(http, 4, 2, 5000);
+        List<CompletableFuture<String>> reviews = fetcher.fetch(new String[] { base + "/review?1" },
+                "div.missing", 10000);
+
+        assertTrue(failure(reviews.get(0)) instanceof IndexOutOfBoundsException);
+        assertEquals(1, fetcher.getFailed());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Group Kilo (Cambridge Computer Lab)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cam.cl.kilo.parsing;
+
+import cam.cl.kilo.NLP.ItemInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.Jsoup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the sample widget in src/test/resources/responses, which follows the GoodReads layout
+ *
+ * @author groupKilo
+ */
+public class ReviewWidgetTest {
+
+    private static final String GOODREADS = "https://www.goodreads.com";
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+
+    private static String widget() throws IOException {
+        InputStream in = ReviewWidgetTest.class.getResourceAsStream("/responses/goodreads_widget.html");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; )
+            out.write(buffer, 0, n);
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        final String widget = widget().replace(GOODREADS, base);
+        server.createContext("/widget", exchange -> respond(exchange, widget));
+        server.createContext("/review/show", exchange -> {
+            pagesFetched.incrementAndGet();
+            String id = exchange.getRequestURI().getPath().substring("/review/show/".length());
+            StringBuilder review = new StringBuilder("Full review " + id + ".");
+            for (int i = 0; i < 50; i++)
+                review.append(" It goes on at length about pointers.");
+            respond(exchange, "<div class=\"reviewText mediumText description\">" + review + "</div>");
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    @Test
+    public void readsSnippetsAndWhetherTheyWereCutShort() throws IOException {
+        List<ReviewWidget.Review> reviews = ReviewWidget.GOODREADS.read(Jsoup.parse(widget(), GOODREADS));
+
+        assertEquals(10, reviews.size());
+        ReviewWidget.Review first = reviews.get(0);
+        assertTrue(first.getSnippet().startsWith("The clearest introduction to C"));
+        assertFalse(first.getSnippet().contains("more"));
+        assertTrue(first.isTruncated());
+        assertTrue(first.getLink().startsWith(GOODREADS + "/review/show/"));
+        assertFalse(reviews.get(1).isTruncated());
+        assertEquals("I came to this after failing with K&R twice. This book finally made arrays and strings"
+                + " click for me.", reviews.get(3).getSnippet());
+    }
+
+    @Test
+    public void enoughSnippetsTakeOneRequest() {
+        ItemInfo info = new ItemInfo();
+        Parser.parseWidget(base + "/widget", ReviewWidget.GOODREADS, new ReviewBudget(500, 100), info);
+
+        // The snippets after the budget was met are left out
+        assertEquals(4, info.getReviews().size());
+        assertTrue(info.getReviews().get(0).startsWith("The clearest introduction to C"));
+        assertEquals(0, pagesFetched.get());
+    }
+
+    @Test
+    public void fetchingStopsOnceTheBudgetIsMet() {
+        ItemInfo info = new ItemInfo();
+        Parser.parseWidget(base + "/widget", ReviewWidget.GOODREADS, new ReviewBudget(2500, 1000), info);
+
+        assertTrue("Fetched " + pagesFetched.get() + " pages", pagesFetched.get() <= Parser.FETCH_WINDOW);
+        // Pages are requested in widget order but may arrive in any order
+        boolean full = false;
+        for (String review : info.getReviews())
+            full |= review.startsWith("Full review ");
+        assertTrue(full);
+        assertTrue(info.getReviews().size() < 10);
+    }
+
+    @Test
+    public void shortSnippetsAreReplacedByTheFullReviews() {
+        ItemInfo info = new ItemInfo();
+        Parser.parseWidget(base + "/widget", ReviewWidget.GOODREADS, new ReviewBudget(100000, 1000), info);
+
+        assertEquals(10, info.getReviews().size());
+        assertEquals(6, pagesFetched.get());
+        assertTrue(info.getReviews().get(0).startsWith("Full review "));
+        assertTrue(info.getReviews().get(1).startsWith("Good for absolute beginners."));
+    }
+}